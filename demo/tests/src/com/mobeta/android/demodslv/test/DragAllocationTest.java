@@ -0,0 +1,145 @@
+package com.mobeta.android.demodslv.test;
+
+import android.os.Debug;
+import android.os.SystemClock;
+import android.view.MotionEvent;
+import android.view.View;
+
+/**
+ * Checks that a drag allocates nothing on the UI thread once it has
+ * warmed up (height cache filled, shuffle arrays grown, recycled
+ * rows available, etc.). Counts everything the UI thread does:
+ * touch dispatch, layout, draw and drag-scroll frames.
+ */
+public class DragAllocationTest extends DragTestCase {
+
+    /**
+     * Touch y step between moves, in pixels.
+     */
+    private final static int STEP = 4;
+
+    /**
+     * Passes over the move range before counting starts.
+     */
+    private final static int WARM_UP_PASSES = 2;
+
+    private final static int COUNTED_PASSES = 2;
+
+    /**
+     * Drag-scroll time before and while counting, in ms.
+     */
+    private final static int SCROLL_WARM_UP = 500;
+    private final static int SCROLL_COUNTED = 1000;
+
+    /**
+     * Moves stay between these, clear of the drag-scroll regions
+     * (the top and bottom thirds by default), so the list never
+     * scrolls.
+     */
+    private int mMinY;
+    private int mMaxY;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        final int height = mDslv.getHeight();
+        mMinY = (int) (0.36f * height);
+        mMaxY = (int) (0.64f * height);
+    }
+
+    public void testSteadyStateDragMovesDoNotAllocate() {
+        startDrag();
+
+        for (int i = 0; i < WARM_UP_PASSES; ++i) {
+            movePass();
+        }
+
+        startCounting();
+        try {
+            for (int i = 0; i < COUNTED_PASSES; ++i) {
+                movePass();
+            }
+        } finally {
+            final long allocs = stopCounting();
+            touch(MotionEvent.ACTION_UP, mMinY);
+            frame();
+            assertEquals("objects allocated by drag moves and frames", 0, allocs);
+        }
+    }
+
+    public void testSteadyStateDragScrollDoesNotAllocate() {
+        startDrag();
+
+        // hold the touch near the bottom; the list drag-scrolls down
+        final int scrollY = (int) (0.95f * mDslv.getHeight());
+        touch(MotionEvent.ACTION_MOVE, scrollY);
+        SystemClock.sleep(SCROLL_WARM_UP);
+        final int firstBefore = mDslv.getFirstVisiblePosition();
+
+        startCounting();
+        try {
+            SystemClock.sleep(SCROLL_COUNTED);
+        } finally {
+            final long allocs = stopCounting();
+            final int firstAfter = mDslv.getFirstVisiblePosition();
+            touch(MotionEvent.ACTION_UP, scrollY);
+            frame();
+
+            assertTrue("list did not drag-scroll", firstAfter > firstBefore);
+            assertTrue("list hit its end while counting", firstAfter + mDslv.getChildCount()
+                    < ROW_COUNT);
+            assertEquals("objects allocated by drag-scroll frames", 0, allocs);
+        }
+    }
+
+    private void startDrag() {
+        final View row = rowAt(mMinY);
+        assertNotNull("no row under the move range", row);
+
+        touch(MotionEvent.ACTION_DOWN, row.getTop() + row.getHeight() / 2);
+        frame();
+        // DSLV hides the dragged row
+        assertEquals("drag did not start", View.INVISIBLE, row.getVisibility());
+    }
+
+    /**
+     * Drags down to mMaxY and back up to mMinY, letting the UI
+     * thread draw after each move.
+     */
+    private void movePass() {
+        for (int y = mMinY; y <= mMaxY; y += STEP) {
+            touch(MotionEvent.ACTION_MOVE, y);
+            frame();
+        }
+        for (int y = mMaxY; y >= mMinY; y -= STEP) {
+            touch(MotionEvent.ACTION_MOVE, y);
+            frame();
+        }
+    }
+
+    private void startCounting() {
+        Debug.startAllocCounting();
+        mInstrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                Debug.resetThreadAllocCount();
+            }
+        });
+    }
+
+    /**
+     * @return Objects allocated by the UI thread since
+     * startCounting().
+     */
+    private long stopCounting() {
+        final long[] allocs = new long[1];
+        mInstrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                allocs[0] = Debug.getThreadAllocCount();
+            }
+        });
+        Debug.stopAllocCounting();
+        return allocs[0];
+    }
+}
@@ -0,0 +1,107 @@
+package com.mobeta.android.demodslv.test;
+
+import android.app.Activity;
+import android.app.Instrumentation;
+import android.os.SystemClock;
+import android.test.ActivityInstrumentationTestCase2;
+import android.view.MotionEvent;
+import android.view.View;
+
+import com.mobeta.android.demodslv.TestBedDSLV;
+import com.mobeta.android.dslv.DragSortController;
+import com.mobeta.android.dslv.DragSortListView;
+
+/**
+ * Hosts a DragSortListView over a {@link TestRowAdapter} in a demo
+ * Activity and drives it with touch events on the UI thread.
+ */
+abstract class DragTestCase extends ActivityInstrumentationTestCase2<TestBedDSLV> {
+
+    protected final static int ROW_COUNT = 300;
+
+    protected Instrumentation mInstrumentation;
+    protected DragSortListView mDslv;
+    protected TestRowAdapter mAdapter;
+
+    protected int mRowHeight;
+
+    private long mDownTime;
+    private int mTouchX;
+
+    public DragTestCase() {
+        super("com.mobeta.android.demodslv", TestBedDSLV.class);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mInstrumentation = getInstrumentation();
+
+        final Activity activity = getActivity();
+        mRowHeight = (int) (48 * activity.getResources().getDisplayMetrics().density);
+        mInstrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mDslv = new DragSortListView(activity, null);
+                // rows are their own drag handles; drags start on touch down
+                DragSortController controller = new DragSortController(mDslv);
+                setUpList(mDslv, controller);
+                mDslv.setFloatViewManager(controller);
+                mDslv.setOnTouchListener(controller);
+
+                mAdapter = new TestRowAdapter(ROW_COUNT, mRowHeight);
+                mDslv.setAdapter(mAdapter);
+                activity.setContentView(mDslv);
+            }
+        });
+        mInstrumentation.waitForIdleSync();
+
+        mTouchX = mDslv.getWidth() / 2;
+    }
+
+    /**
+     * Override to configure the list before it gets its adapter.
+     */
+    protected void setUpList(DragSortListView dslv, DragSortController controller) {
+    }
+
+    /**
+     * Dispatches a touch event at (list center, y) on the UI thread
+     * without waiting for the frames it causes.
+     */
+    protected void touch(final int action, int y) {
+        if (action == MotionEvent.ACTION_DOWN) {
+            mDownTime = SystemClock.uptimeMillis();
+        }
+        final MotionEvent ev = MotionEvent.obtain(mDownTime, SystemClock.uptimeMillis(),
+                action, mTouchX, y, 0);
+        mInstrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mDslv.dispatchTouchEvent(ev);
+            }
+        });
+        ev.recycle();
+    }
+
+    /**
+     * Lets the UI thread draw and settle.
+     */
+    protected void frame() {
+        mInstrumentation.waitForIdleSync();
+    }
+
+    /**
+     * @return The onscreen row containing list y-coordinate y, or
+     * null.
+     */
+    protected View rowAt(int y) {
+        for (int i = 0; i < mDslv.getChildCount(); ++i) {
+            View child = mDslv.getChildAt(i);
+            if (child.getTop() <= y && child.getBottom() > y) {
+                return child;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,70 @@
+package com.mobeta.android.demodslv.test;
+
+import android.os.SystemClock;
+import android.view.MotionEvent;
+import android.view.View;
+
+import com.mobeta.android.dslv.DragSortListView;
+
+/**
+ * Drags an item until its source position has scrolled off the top
+ * of the list, then drops it mid-list. The list must not jump on
+ * drop: the dropped item stays under the touch.
+ */
+public class DropAfterScrollTest extends DragTestCase {
+
+    /**
+     * Time spent drag-scrolling, in ms.
+     */
+    private final static int SCROLL_TIME = 1500;
+
+    /**
+     * Time allowed for shuffle and drop animations, in ms.
+     */
+    private final static int SETTLE_TIME = 500;
+
+    public void testDropAfterScrollRelayout() {
+        dropAfterScroll(DragSortListView.SHUFFLE_RELAYOUT);
+    }
+
+    public void testDropAfterScrollTranslate() {
+        dropAfterScroll(DragSortListView.SHUFFLE_TRANSLATE);
+    }
+
+    private void dropAfterScroll(final int shuffleMode) {
+        mInstrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mDslv.setShuffleMode(shuffleMode);
+            }
+        });
+
+        final int height = mDslv.getHeight();
+        final int dropY = height / 2;
+
+        final View row = rowAt((int) (0.4f * height));
+        assertNotNull("no row to drag", row);
+        final int srcPos = mDslv.getPositionForView(row);
+        final int item = mAdapter.getItemAt(srcPos);
+
+        touch(MotionEvent.ACTION_DOWN, row.getTop() + row.getHeight() / 2);
+        frame();
+
+        // drag-scroll down until the source is well off the top
+        touch(MotionEvent.ACTION_MOVE, (int) (0.95f * height));
+        SystemClock.sleep(SCROLL_TIME);
+        touch(MotionEvent.ACTION_MOVE, dropY);
+        SystemClock.sleep(SETTLE_TIME);
+        frame();
+        assertTrue("source did not scroll off", mDslv.getFirstVisiblePosition() > srcPos);
+
+        touch(MotionEvent.ACTION_UP, dropY);
+        SystemClock.sleep(SETTLE_TIME);
+        frame();
+
+        final View dropped = rowAt(dropY);
+        assertNotNull("no row under the drop point", dropped);
+        assertEquals("dropped item moved away from the touch", item,
+                mAdapter.getItemAt(mDslv.getPositionForView(dropped)));
+    }
+}
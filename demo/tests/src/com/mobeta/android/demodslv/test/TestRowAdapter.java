@@ -0,0 +1,84 @@
+package com.mobeta.android.demodslv.test;
+
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.AbsListView;
+import android.widget.BaseAdapter;
+
+import com.mobeta.android.dslv.DragSortListView;
+
+/**
+ * Plain colored rows of a fixed height. Binding a recycled row
+ * allocates nothing, so allocations seen during a drag come from
+ * DragSortListView (or the framework), not from the adapter.
+ */
+class TestRowAdapter extends BaseAdapter implements DragSortListView.DropListener {
+
+    private final static int[] COLORS = {
+        0xffcc4444, 0xff44cc44, 0xff4444cc, 0xffcccc44, 0xff44cccc
+    };
+
+    /**
+     * Item at each position, identified by its original position.
+     */
+    private int[] mItems;
+
+    private int mRowHeight;
+
+    public TestRowAdapter(int count, int rowHeight) {
+        mItems = new int[count];
+        for (int i = 0; i < count; ++i) {
+            mItems[i] = i;
+        }
+        mRowHeight = rowHeight;
+    }
+
+    /**
+     * @return Original position of the item now at position.
+     */
+    public int getItemAt(int position) {
+        return mItems[position];
+    }
+
+    @Override
+    public void drop(int from, int to) {
+        if (from == to) {
+            return;
+        }
+        final int item = mItems[from];
+        if (from < to) {
+            System.arraycopy(mItems, from + 1, mItems, from, to - from);
+        } else {
+            System.arraycopy(mItems, to, mItems, to + 1, from - to);
+        }
+        mItems[to] = item;
+        notifyDataSetChanged();
+    }
+
+    @Override
+    public int getCount() {
+        return mItems.length;
+    }
+
+    @Override
+    public Object getItem(int position) {
+        return Integer.valueOf(mItems[position]);
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return mItems[position];
+    }
+
+    @Override
+    public View getView(int position, View convertView, ViewGroup parent) {
+        View v = convertView;
+        if (v == null) {
+            v = new View(parent.getContext());
+            v.setLayoutParams(new AbsListView.LayoutParams(
+                    ViewGroup.LayoutParams.FILL_PARENT, mRowHeight));
+        }
+        v.setBackgroundColor(COLORS[mItems[position] % COLORS.length]);
+        return v;
+    }
+}
@@ -0,0 +1,76 @@
+package com.mobeta.android.dslv;
+
+import android.graphics.Bitmap;
+
+import java.lang.ref.SoftReference;
+import java.util.ArrayList;
+
+/**
+ * Small pool of Bitmaps keyed by size and config. Used by
+ * {@link SimpleFloatViewManager} so that each drag does not
+ * allocate and free a full-row Bitmap. Pooled Bitmaps are only
+ * softly held, so the garbage collector may reclaim them when
+ * memory runs low.
+ */
+class BitmapPool {
+
+    private ArrayList<SoftReference<Bitmap>> mBitmaps = new ArrayList<SoftReference<Bitmap>>();
+
+    private int mMaxSize;
+
+    public BitmapPool(int maxSize) {
+        mMaxSize = maxSize;
+    }
+
+    /**
+     * Returns a mutable Bitmap of the given size and config, reusing
+     * a pooled one if possible. Contents are undefined.
+     */
+    public Bitmap get(int width, int height, Bitmap.Config config) {
+        for (int i = mBitmaps.size() - 1; i >= 0; --i) {
+            Bitmap b = mBitmaps.get(i).get();
+            if (b == null || b.isRecycled()) {
+                // reclaimed
+                mBitmaps.remove(i);
+            } else if (b.getWidth() == width && b.getHeight() == height
+                    && b.getConfig() == config) {
+                mBitmaps.remove(i);
+                return b;
+            }
+        }
+
+        return Bitmap.createBitmap(width, height, config);
+    }
+
+    /**
+     * Returns a Bitmap obtained from {@link #get(int, int, Bitmap.Config)}
+     * to the pool. The oldest pooled Bitmap is recycled if the pool is
+     * full.
+     */
+    public void put(Bitmap b) {
+        if (b == null || b.isRecycled()) {
+            return;
+        }
+
+        if (mBitmaps.size() >= mMaxSize) {
+            Bitmap old = mBitmaps.remove(0).get();
+            if (old != null) {
+                old.recycle();
+            }
+        }
+        mBitmaps.add(new SoftReference<Bitmap>(b));
+    }
+
+    /**
+     * Recycles all pooled Bitmaps.
+     */
+    public void clear() {
+        for (int i = 0; i < mBitmaps.size(); ++i) {
+            Bitmap b = mBitmaps.get(i).get();
+            if (b != null) {
+                b.recycle();
+            }
+        }
+        mBitmaps.clear();
+    }
+}
@@ -0,0 +1,44 @@
+package com.mobeta.android.dslv;
+
+/**
+ * Turns a drag-scroll speed and frame interval into whole-pixel
+ * scroll steps. The sub-pixel part of each step is carried over to
+ * the next one, so that slow scrolling at high frame rates does not
+ * stall on frames that would move less than a pixel.
+ */
+class DragScrollStep {
+
+    private float mRemainder;
+
+    /**
+     * Forgets any carried distance. Call when scrolling starts, and
+     * whenever the list stops short of a step, e.g. at its top.
+     */
+    public void reset() {
+        mRemainder = 0;
+    }
+
+    /**
+     * @param speed Scroll speed in pixels per millisecond.
+     * @param dt Frame interval in milliseconds.
+     * @param maxStep Largest step, in pixels, in either direction.
+     * The carried distance is dropped when the step is clamped.
+     *
+     * @return Whole pixels to scroll this frame.
+     */
+    public int step(float speed, float dt, int maxStep) {
+        final float exact = speed * dt + mRemainder;
+        int step = (int) exact;
+        mRemainder = exact - step;
+
+        if (step > maxStep) {
+            step = maxStep;
+            mRemainder = 0;
+        } else if (step < -maxStep) {
+            step = -maxStep;
+            mRemainder = 0;
+        }
+
+        return step;
+    }
+}
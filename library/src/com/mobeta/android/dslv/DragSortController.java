@@ -1,11 +1,15 @@
 package com.mobeta.android.dslv;
 
 import android.graphics.Point;
+import android.graphics.Rect;
 import android.view.GestureDetector;
 import android.view.HapticFeedbackConstants;
 import android.view.MotionEvent;
+import android.view.VelocityTracker;
 import android.view.View;
 import android.view.ViewConfiguration;
+import android.view.ViewParent;
+import android.view.ViewTreeObserver;
 import android.widget.AdapterView;
 
 /**
@@ -46,11 +50,49 @@ public class DragSortController extends SimpleFloatViewManager implements View.O
     private boolean mRemoveEnabled = false;
     private boolean mIsRemoving = false;
 
-    private GestureDetector mDetector;
+    private int mTouchSlop;
 
-    private GestureDetector mFlingRemoveDetector;
+    /**
+     * Gesture detection state. This replaces a pair of
+     * GestureDetectors (one for drag start, one for fling removal)
+     * with a single tracker that reuses its VelocityTracker.
+     */
+    private VelocityTracker mVelocityTracker;
 
-    private int mTouchSlop;
+    /**
+     * True while holding mVelocityTracker and listening for list
+     * layouts.
+     */
+    private boolean mAttached;
+
+    private MotionEvent mDownEvent;
+    private float mLastMotionX;
+    private float mLastMotionY;
+    private boolean mInTapRegion;
+    private boolean mInLongPress;
+    private int mTouchSlopSquare;
+    private int mMinFlingVelocity;
+    private int mMaxFlingVelocity;
+
+    private Runnable mShowPressRunnable = new Runnable() {
+        @Override
+        public void run() {
+            if (mDownEvent != null) {
+                onShowPress(mDownEvent);
+            }
+        }
+    };
+
+    private Runnable mLongPressRunnable = new Runnable() {
+        @Override
+        public void run() {
+            if (mDownEvent != null) {
+                mDslv.removeCallbacks(mShowPressRunnable);
+                mInLongPress = true;
+                onLongPress(mDownEvent);
+            }
+        }
+    };
 
     public static final int MISS = -1;
 
@@ -81,6 +123,50 @@ public class DragSortController extends SimpleFloatViewManager implements View.O
     private DragSortListView mDslv;
     private int mPositionX;
 
+    private boolean mSpeculativeLift = false;
+
+    /**
+     * Handle types in the hit cache.
+     */
+    private static final int HANDLE_DRAG = 0;
+    private static final int HANDLE_FLING = 1;
+    private static final int HANDLE_CLICK_REMOVE = 2;
+    private static final int HANDLE_TYPES = 3;
+
+    /**
+     * Bounds of onscreen items and their handles in ListView
+     * coordinates, so that ACTION_DOWN hit tests need no View
+     * tree traversal. Rebuilt after a layout or scroll.
+     */
+    private boolean mHitCacheDirty = true;
+    private int mHitCacheFirst;
+    private int mHitCacheCount;
+    private int mHitCacheTop;
+    private int mHitCacheBottom;
+    private int[] mItemLefts = new int[0];
+    private int[] mItemTops = new int[0];
+    private int[] mItemBottoms = new int[0];
+    private Rect[][] mHandleRects = new Rect[HANDLE_TYPES][0];
+
+    /**
+     * Marks the hit cache dirty after list layouts. Registered while
+     * the controller is attached.
+     */
+    private final ViewTreeObserver.OnGlobalLayoutListener mHitCacheInvalidator =
+            new ViewTreeObserver.OnGlobalLayoutListener() {
+                @Override
+                public void onGlobalLayout() {
+                    mHitCacheDirty = true;
+                }
+            };
+
+    /**
+     * Floating View built on ACTION_DOWN for a drag that has not
+     * started yet.
+     */
+    private View mPreparedView;
+    private int mPreparedPos = MISS;
+
     /**
      * Calls {@link #DragSortController(DragSortListView, int)} with a
      * 0 drag handle id, FLING_RIGHT_REMOVE remove mode,
@@ -112,15 +198,45 @@ public class DragSortController extends SimpleFloatViewManager implements View.O
             int removeMode, int clickRemoveId, int flingHandleId) {
         super(dslv);
         mDslv = dslv;
-        mDetector = new GestureDetector(dslv.getContext(), this);
-        mFlingRemoveDetector = new GestureDetector(dslv.getContext(), mFlingRemoveListener);
-        mFlingRemoveDetector.setIsLongpressEnabled(false);
-        mTouchSlop = ViewConfiguration.get(dslv.getContext()).getScaledTouchSlop();
+        final ViewConfiguration config = ViewConfiguration.get(dslv.getContext());
+        mTouchSlop = config.getScaledTouchSlop();
+        mTouchSlopSquare = mTouchSlop * mTouchSlop;
+        mMinFlingVelocity = config.getScaledMinimumFlingVelocity();
+        mMaxFlingVelocity = config.getScaledMaximumFlingVelocity();
         mDragHandleId = dragHandleId;
         mClickRemoveId = clickRemoveId;
         mFlingHandleId = flingHandleId;
         setRemoveMode(removeMode);
         setDragInitMode(dragInitMode);
+
+        attach();
+    }
+
+    /**
+     * Takes the VelocityTracker and starts watching the list for
+     * layouts. Undone by {@link #detach()}; the next touch
+     * reattaches.
+     */
+    private void attach() {
+        mVelocityTracker = VelocityTracker.obtain();
+        mDslv.getViewTreeObserver().addOnGlobalLayoutListener(mHitCacheInvalidator);
+        mHitCacheDirty = true;
+        mAttached = true;
+    }
+
+    /**
+     * Releases the VelocityTracker and layout listener. Called by
+     * DSLV when it leaves its window or takes another touch
+     * listener.
+     */
+    void detach() {
+        if (!mAttached) {
+            return;
+        }
+        mAttached = false;
+        mVelocityTracker.recycle();
+        mVelocityTracker = null;
+        mDslv.getViewTreeObserver().removeGlobalOnLayoutListener(mHitCacheInvalidator);
     }
 
 
@@ -138,6 +254,26 @@ public class DragSortController extends SimpleFloatViewManager implements View.O
         mDragInitMode = mode;
     }
 
+    /**
+     * If enabled, and drags start on drag or long press, the floating
+     * View is built when the finger touches down on a drag handle
+     * rather than when the drag starts. The drag then starts without
+     * delay, at the expense of wasted work when the touch turns out
+     * to be a tap or a scroll.
+     *
+     * @param enabled Set <code>true</code> to enable speculative lift.
+     */
+    public void setSpeculativeLift(boolean enabled) {
+        mSpeculativeLift = enabled;
+        if (!enabled) {
+            discardPreparedView();
+        }
+    }
+
+    public boolean isSpeculativeLift() {
+        return mSpeculativeLift;
+    }
+
     /**
      * Enable/Disable list item sorting. Disabling is useful if only item
      * removal is desired. Prevents drags in the vertical direction.
@@ -185,6 +321,7 @@ public class DragSortController extends SimpleFloatViewManager implements View.O
      */
     public void setDragHandleId(int id) {
         mDragHandleId = id;
+        mHitCacheDirty = true;
     }
 
     /**
@@ -195,6 +332,7 @@ public class DragSortController extends SimpleFloatViewManager implements View.O
      */
     public void setFlingHandleId(int id) {
         mFlingHandleId = id;
+        mHitCacheDirty = true;
     }
 
     /**
@@ -205,6 +343,7 @@ public class DragSortController extends SimpleFloatViewManager implements View.O
      */
     public void setClickRemoveId(int id) {
         mClickRemoveId = id;
+        mHitCacheDirty = true;
     }
 
     /**
@@ -229,21 +368,58 @@ public class DragSortController extends SimpleFloatViewManager implements View.O
             dragFlags |= DragSortListView.DRAG_NEG_X;
         }
 
+        if (mPreparedView != null && mPreparedPos == position) {
+            View floatView = mPreparedView;
+            mPreparedView = null;
+            mPreparedPos = MISS;
+            mDragging = mDslv.startDrag(position - mDslv.getHeaderViewsCount(), floatView,
+                    dragFlags, deltaX, deltaY);
+            if (!mDragging) {
+                onDestroyFloatView(floatView);
+            }
+            return mDragging;
+        }
+
+        discardPreparedView();
         mDragging = mDslv.startDrag(position - mDslv.getHeaderViewsCount(), dragFlags, deltaX,
                 deltaY);
         return mDragging;
     }
 
+    /**
+     * Builds the floating View for a drag that might start soon.
+     *
+     * @param position The list item position (includes headers).
+     */
+    private void prepareFloatView(int position) {
+        discardPreparedView();
+
+        View v = onCreateFloatView(position - mDslv.getHeaderViewsCount());
+        if (v != null) {
+            mDslv.prepareFloatView(v);
+            mPreparedView = v;
+            mPreparedPos = position;
+        }
+    }
+
+    private void discardPreparedView() {
+        if (mPreparedView != null) {
+            onDestroyFloatView(mPreparedView);
+            mPreparedView = null;
+            mPreparedPos = MISS;
+        }
+    }
+
     @Override
     public boolean onTouch(View v, MotionEvent ev) {
         if (!mDslv.isDragEnabled() || mDslv.listViewIntercepted()) {
+            // the rest of the gesture belongs to the ListView
+            cancelPressCallbacks();
+            discardPreparedView();
             return false;
         }
 
-        mDetector.onTouchEvent(ev);
-        if (mRemoveEnabled && mDragging && mRemoveMode == FLING_REMOVE) {
-            mFlingRemoveDetector.onTouchEvent(ev);
-        }
+        detectGesture(ev);
 
         int action = ev.getAction() & MotionEvent.ACTION_MASK;
         switch (action) {
@@ -262,12 +438,108 @@ public class DragSortController extends SimpleFloatViewManager implements View.O
             case MotionEvent.ACTION_CANCEL:
                 mIsRemoving = false;
                 mDragging = false;
+                discardPreparedView();
                 break;
         }
 
         return false;
     }
 
+    /**
+     * Dispatches the OnGestureListener callbacks of this controller,
+     * following GestureDetector semantics, and detects fling
+     * removal.
+     */
+    private void detectGesture(MotionEvent ev) {
+        final int action = ev.getAction() & MotionEvent.ACTION_MASK;
+        final float x = ev.getX();
+        final float y = ev.getY();
+
+        if (!mAttached) {
+            attach();
+        } else if (action == MotionEvent.ACTION_DOWN) {
+            mVelocityTracker.clear();
+        }
+        mVelocityTracker.addMovement(ev);
+
+        switch (action) {
+            case MotionEvent.ACTION_DOWN:
+                if (mDownEvent != null) {
+                    mDownEvent.recycle();
+                }
+                mDownEvent = MotionEvent.obtain(ev);
+                mLastMotionX = x;
+                mLastMotionY = y;
+                mInTapRegion = true;
+                mInLongPress = false;
+
+                cancelPressCallbacks();
+                final int tapTimeout = ViewConfiguration.getTapTimeout();
+                mDslv.postDelayed(mShowPressRunnable, tapTimeout);
+                mDslv.postDelayed(mLongPressRunnable,
+                        tapTimeout + ViewConfiguration.getLongPressTimeout());
+
+                onDown(ev);
+                break;
+            case MotionEvent.ACTION_MOVE:
+                if (mInLongPress || mDownEvent == null) {
+                    break;
+                }
+
+                final float scrollX = mLastMotionX - x;
+                final float scrollY = mLastMotionY - y;
+                if (mInTapRegion) {
+                    final int dx = (int) (x - mDownEvent.getX());
+                    final int dy = (int) (y - mDownEvent.getY());
+                    if (dx * dx + dy * dy > mTouchSlopSquare) {
+                        mInTapRegion = false;
+                        cancelPressCallbacks();
+                        onScroll(mDownEvent, ev, scrollX, scrollY);
+                        mLastMotionX = x;
+                        mLastMotionY = y;
+                    }
+                } else if (Math.abs(scrollX) >= 1 || Math.abs(scrollY) >= 1) {
+                    onScroll(mDownEvent, ev, scrollX, scrollY);
+                    mLastMotionX = x;
+                    mLastMotionY = y;
+                }
+                break;
+            case MotionEvent.ACTION_UP:
+                cancelPressCallbacks();
+                if (mDownEvent == null) {
+                    break;
+                }
+
+                if (mInLongPress) {
+                    mInLongPress = false;
+                } else if (mInTapRegion) {
+                    onSingleTapUp(ev);
+                } else {
+                    // a fling must travel at least the touch slop
+                    mVelocityTracker.computeCurrentVelocity(1000, mMaxFlingVelocity);
+                    final float velocityX = mVelocityTracker.getXVelocity();
+                    final float velocityY = mVelocityTracker.getYVelocity();
+                    if (Math.abs(velocityX) > mMinFlingVelocity
+                            || Math.abs(velocityY) > mMinFlingVelocity) {
+                        onFling(mDownEvent, ev, velocityX, velocityY);
+                        if (mRemoveEnabled && mDragging && mRemoveMode == FLING_REMOVE) {
+                            onFlingRemove(velocityX);
+                        }
+                    }
+                }
+                break;
+            case MotionEvent.ACTION_CANCEL:
+                cancelPressCallbacks();
+                mInLongPress = false;
+                break;
+        }
+    }
+
+    private void cancelPressCallbacks() {
+        mDslv.removeCallbacks(mShowPressRunnable);
+        mDslv.removeCallbacks(mLongPressRunnable);
+    }
+
     /**
      * Overrides to provide fading when slide removal is enabled.
      */
@@ -319,6 +591,141 @@ public class DragSortController extends SimpleFloatViewManager implements View.O
     }
 
     public int viewIdHitPosition(MotionEvent ev, int id) {
+        final int type;
+        if (id == mDragHandleId) {
+            type = HANDLE_DRAG;
+        } else if (id == mFlingHandleId) {
+            type = HANDLE_FLING;
+        } else if (id == mClickRemoveId) {
+            type = HANDLE_CLICK_REMOVE;
+        } else {
+            return findViewIdHitPosition(ev, id);
+        }
+
+        updateHitCache();
+
+        final int x = (int) ev.getX();
+        final int y = (int) ev.getY();
+
+        // binary search for the item under y
+        int lo = 0;
+        int hi = mHitCacheCount - 1;
+        int index = -1;
+        while (lo <= hi) {
+            final int mid = (lo + hi) >>> 1;
+            if (y < mItemTops[mid]) {
+                hi = mid - 1;
+            } else if (y >= mItemBottoms[mid]) {
+                lo = mid + 1;
+            } else {
+                index = mid;
+                break;
+            }
+        }
+
+        if (index == -1) {
+            return MISS;
+        }
+
+        // We're only interested if the touch was on an
+        // item that's not a header or footer.
+        final int touchPos = mHitCacheFirst + index;
+        if (touchPos < mDslv.getHeaderViewsCount()
+                || touchPos >= mDslv.getCount() - mDslv.getFooterViewsCount()) {
+            return MISS;
+        }
+
+        final Rect r = mHandleRects[type][index];
+        if (x > r.left && y > r.top && x < r.right && y < r.bottom) {
+            mItemX = mItemLefts[index];
+            mItemY = mItemTops[index];
+            return touchPos;
+        }
+
+        return MISS;
+    }
+
+    /**
+     * Rebuilds the hit cache if the ListView has been laid out or
+     * scrolled since it was built.
+     */
+    private void updateHitCache() {
+        final int first = mDslv.getFirstVisiblePosition();
+        final int count = mDslv.getChildCount();
+        final int top = count > 0 ? mDslv.getChildAt(0).getTop() : 0;
+        final int bottom = count > 0 ? mDslv.getChildAt(count - 1).getBottom() : 0;
+
+        if (!mHitCacheDirty && first == mHitCacheFirst && count == mHitCacheCount
+                && top == mHitCacheTop && bottom == mHitCacheBottom) {
+            return;
+        }
+
+        if (mItemTops.length < count) {
+            mItemLefts = new int[count];
+            mItemTops = new int[count];
+            mItemBottoms = new int[count];
+            for (int type = 0; type < HANDLE_TYPES; ++type) {
+                Rect[] rects = new Rect[count];
+                Rect[] old = mHandleRects[type];
+                System.arraycopy(old, 0, rects, 0, old.length);
+                for (int i = old.length; i < count; ++i) {
+                    rects[i] = new Rect();
+                }
+                mHandleRects[type] = rects;
+            }
+        }
+
+        for (int i = 0; i < count; ++i) {
+            final View item = mDslv.getChildAt(i);
+            mItemLefts[i] = item.getLeft();
+            mItemTops[i] = item.getTop();
+            mItemBottoms[i] = item.getBottom();
+
+            getHandleRect(item, mDragHandleId, mHandleRects[HANDLE_DRAG][i]);
+            getHandleRect(item, mFlingHandleId, mHandleRects[HANDLE_FLING][i]);
+            getHandleRect(item, mClickRemoveId, mHandleRects[HANDLE_CLICK_REMOVE][i]);
+        }
+
+        mHitCacheFirst = first;
+        mHitCacheCount = count;
+        mHitCacheTop = top;
+        mHitCacheBottom = bottom;
+        mHitCacheDirty = false;
+    }
+
+    /**
+     * Gets the bounds of View <code>id</code> within an item in
+     * ListView coordinates. Empty if there is no such View.
+     */
+    private void getHandleRect(View item, int id, Rect out) {
+        View box = id == 0 ? item : (View) item.findViewById(id);
+        if (box == null) {
+            out.setEmpty();
+            return;
+        }
+
+        int left = box.getLeft();
+        int top = box.getTop();
+        View v = box;
+        while (v != item) {
+            ViewParent parent = v.getParent();
+            if (!(parent instanceof View)) {
+                // detached
+                out.setEmpty();
+                return;
+            }
+            v = (View) parent;
+            left += v.getLeft() - v.getScrollX();
+            top += v.getTop() - v.getScrollY();
+        }
+        out.set(left, top, left + box.getWidth(), top + box.getHeight());
+    }
+
+    /**
+     * Hit test for a View id that is not one of the handle ids, by
+     * searching the View tree.
+     */
+    private int findViewIdHitPosition(MotionEvent ev, int id) {
         final int x = (int) ev.getX();
         final int y = (int) ev.getY();
 
@@ -365,6 +772,11 @@ public class DragSortController extends SimpleFloatViewManager implements View.O
         mHitPos = startDragPosition(ev);
         if (mHitPos != MISS && mDragInitMode == ON_DOWN) {
             startDrag(mHitPos, (int) ev.getX() - mItemX, (int) ev.getY() - mItemY);
+        } else if (mHitPos != MISS && mSpeculativeLift && mSortEnabled) {
+            prepareFloatView(mHitPos);
+        } else {
+            // left over from a gesture the ListView took over
+            discardPreparedView();
         }
 
         mIsRemoving = false;
@@ -394,6 +806,9 @@ public class DragSortController extends SimpleFloatViewManager implements View.O
                 {
                     mIsRemoving = true;
                     startDrag(mFlingHitPos, deltaX, deltaY);
+                } else if (Math.abs(y2 - y1) > mTouchSlop) {
+                    // the list is scrolling; no drag from this gesture
+                    discardPreparedView();
                 }
             } else if (mFlingHitPos != MISS) {
                 if (Math.abs(x2 - x1) > mTouchSlop && mRemoveEnabled) {
@@ -402,6 +817,7 @@ public class DragSortController extends SimpleFloatViewManager implements View.O
                 } else if (Math.abs(y2 - y1) > mTouchSlop) {
                     mCanDrag = false; // if started to scroll the list then
                                       // don't allow sorting nor fling-removing
+                    discardPreparedView();
                 }
             }
         }
@@ -441,28 +857,22 @@ public class DragSortController extends SimpleFloatViewManager implements View.O
         // do nothing
     }
 
-    private GestureDetector.OnGestureListener mFlingRemoveListener =
-            new GestureDetector.SimpleOnGestureListener() {
-                @Override
-                public final boolean onFling(MotionEvent e1, MotionEvent e2, float velocityX,
-                        float velocityY) {
-                    // Log.d("mobeta", "on fling remove called");
-                    if (mRemoveEnabled && mIsRemoving) {
-                        int w = mDslv.getWidth();
-                        int minPos = w / 5;
-                        if (velocityX > mFlingSpeed) {
-                            if (mPositionX > -minPos) {
-                                mDslv.stopDragWithVelocity(true, velocityX);
-                            }
-                        } else if (velocityX < -mFlingSpeed) {
-                            if (mPositionX < minPos) {
-                                mDslv.stopDragWithVelocity(true, velocityX);
-                            }
-                        }
-                        mIsRemoving = false;
-                    }
-                    return false;
+    private void onFlingRemove(float velocityX) {
+        // Log.d("mobeta", "on fling remove called");
+        if (mRemoveEnabled && mIsRemoving) {
+            int w = mDslv.getWidth();
+            int minPos = w / 5;
+            if (velocityX > mFlingSpeed) {
+                if (mPositionX > -minPos) {
+                    mDslv.stopDragWithVelocity(true, velocityX);
                 }
-            };
+            } else if (velocityX < -mFlingSpeed) {
+                if (mPositionX < minPos) {
+                    mDslv.stopDragWithVelocity(true, velocityX);
+                }
+            }
+            mIsRemoving = false;
+        }
+    }
 
 }
@@ -27,6 +27,8 @@ public class DragSortItemView extends ViewGroup {
 
     private int mGravity = Gravity.TOP;
 
+    private int mShuffleOffset = 0;
+
     public DragSortItemView(Context context) {
         super(context);
 
@@ -46,6 +48,18 @@ public class DragSortItemView extends ViewGroup {
         return mGravity;
     }
 
+    /**
+     * Set the vertical offset at which DragSortListView draws this
+     * item. Used for translation shuffling; does not affect layout.
+     */
+    public void setShuffleOffset(int offset) {
+        mShuffleOffset = offset;
+    }
+
+    public int getShuffleOffset() {
+        return mShuffleOffset;
+    }
+
     @Override
     protected void onLayout(boolean changed, int left, int top, int right, int bottom) {
         final View child = getChildAt(0);
@@ -26,28 +26,38 @@ import android.content.res.TypedArray;
 import android.database.DataSetObserver;
 import android.graphics.Canvas;
 import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.PixelFormat;
 import android.graphics.Point;
+import android.graphics.Rect;
 import android.graphics.drawable.Drawable;
 import android.os.Environment;
-import android.os.SystemClock;
+import android.os.Looper;
+import android.os.MessageQueue;
 import android.util.AttributeSet;
 import android.util.Log;
+import android.util.SparseArray;
 import android.util.SparseBooleanArray;
 import android.util.SparseIntArray;
+import android.view.Display;
 import android.view.Gravity;
 import android.view.MotionEvent;
 import android.view.View;
 import android.view.ViewGroup;
+import android.view.WindowManager;
 import android.widget.AbsListView;
 import android.widget.BaseAdapter;
 import android.widget.Checkable;
+import android.widget.ImageView;
 import android.widget.ListAdapter;
 import android.widget.ListView;
+import android.widget.SectionIndexer;
 
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 
 /**
  * ListView subclass that mediates drag and drop resorting of items.
@@ -122,6 +132,71 @@ public class DragSortListView extends ListView {
      */
     private boolean mAnimate = false;
 
+    /**
+     * Shuffle mode enum. In SHUFFLE_RELAYOUT mode, the drop slot is
+     * opened by changing the heights of the items around it and
+     * laying out the ListView. In SHUFFLE_TRANSLATE mode, item layout
+     * is frozen for the duration of the drag and items are drawn
+     * at vertical offsets instead.
+     */
+    public final static int SHUFFLE_RELAYOUT = 0;
+    public final static int SHUFFLE_TRANSLATE = 1;
+
+    private int mShuffleMode = SHUFFLE_RELAYOUT;
+
+    /**
+     * Float render mode enum. In FLOAT_RENDER_INLINE mode, the
+     * floating View is drawn by this ListView in dispatchDraw(), so
+     * moving it redraws the list. In FLOAT_RENDER_WINDOW mode, it is
+     * hosted in its own window above the list; moving it only moves
+     * the window, and the list is redrawn only when the drop slot
+     * changes.
+     */
+    public final static int FLOAT_RENDER_INLINE = 0;
+    public final static int FLOAT_RENDER_WINDOW = 1;
+
+    private int mFloatRenderMode = FLOAT_RENDER_INLINE;
+
+    /**
+     * True while the floating View is attached to its own window.
+     */
+    private boolean mFloatInWindow = false;
+
+    private WindowManager.LayoutParams mFloatWindowParams;
+
+    private int[] mListScreenLoc = new int[2];
+
+    /**
+     * Frame tick (in frame intervals since the System.nanoTime()
+     * origin) of the last float window move. Moving a window is a
+     * call to the window manager, so it is done at most once per
+     * frame.
+     */
+    private long mFloatWindowTick = -1;
+
+    private FrameCallback mFloatWindowCallback = new FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            if (mFloatInWindow) {
+                updateFloatWindow();
+            }
+        }
+    };
+
+    /**
+     * Set while the current drag-sort is represented by item draw
+     * offsets rather than item heights (see SHUFFLE_TRANSLATE).
+     */
+    private boolean mShuffleTranslating = false;
+
+    /**
+     * While translation shuffling, the tops and bottoms (indexed by
+     * child) of items as they are drawn; i.e. as they would be laid
+     * out in SHUFFLE_RELAYOUT mode.
+     */
+    private int[] mShuffleTops = new int[0];
+    private int[] mShuffleBottoms = new int[0];
+
     /**
      * The user dragged from this position.
      */
@@ -261,6 +336,16 @@ public class DragSortListView extends ListView {
      */
     private float mMaxScrollSpeed = 0.5f;
 
+    /**
+     * Built-in drag-scroll profile enum. DRAG_SCROLL_LINEAR is the
+     * default linear profile. DRAG_SCROLL_ACCELERATING is an
+     * {@link AcceleratingDragScrollProfile}; DRAG_SCROLL_ITEM_RATE is
+     * an {@link ItemRateDragScrollProfile}.
+     */
+    public final static int DRAG_SCROLL_LINEAR = 0;
+    public final static int DRAG_SCROLL_ACCELERATING = 1;
+    public final static int DRAG_SCROLL_ITEM_RATE = 2;
+
     /**
      * Defines the scroll speed during a drag-scroll. User can
      * provide their own; this default is a simple linear profile
@@ -349,6 +434,13 @@ public class DragSortListView extends ListView {
      */
     private FloatViewManager mFloatViewManager = null;
 
+    /**
+     * The listener last passed to {@link #setOnTouchListener}; a
+     * DragSortController is detached when it is replaced or this
+     * View leaves its window.
+     */
+    private OnTouchListener mTouchListener;
+
     /**
      * Given to ListView to cancel its action when a drag-sort
      * begins.
@@ -408,6 +500,31 @@ public class DragSortListView extends ListView {
      */
     private boolean mBlockLayoutRequests = false;
 
+    /**
+     * Nesting depth of {@link #beginBatch()} calls. While positive,
+     * layout requests and adapter notifications are held back.
+     */
+    private int mBatchDepth = 0;
+    private boolean mBatchLayoutRequested = false;
+    private boolean mBatchDataChanged = false;
+    private boolean mBatchDataInvalidated = false;
+
+    /**
+     * Set if a notification held back by the current batch arrived
+     * outside of a reordering callback, i.e. item contents may have
+     * changed.
+     */
+    private boolean mBatchContentChanged = false;
+
+    /**
+     * Items removed from above the first onscreen item during the
+     * current batch, and that item's top when the first of them was
+     * removed. The scroll is corrected once the ListView has seen
+     * the removals; see {@link #shiftFirstVisible(int)}.
+     */
+    private int mBatchFirstShift = 0;
+    private int mBatchFirstTop;
+
     /**
      * Set to true when a down event happens during drag sort;
      * for example, when drag finish animations are
@@ -427,17 +544,81 @@ public class DragSortListView extends ListView {
      * drag-sort.
      */
     private static final int sCacheSize = 3;
-    private HeightCache mChildHeightCache = new HeightCache(sCacheSize);
+
+    /**
+     * Number of rows ahead of a drag-scroll whose heights are
+     * measured at idle time by the {@link HeightPrefetcher}.
+     */
+    private static final int sPrefetchCount = 8;
+    private HeightCache mChildHeightCache = new HeightCache(sCacheSize + sPrefetchCount);
+
+    private HeightPrefetcher mHeightPrefetcher = new HeightPrefetcher();
 
     private RemoveAnimator mRemoveAnimator;
 
+    private BatchRemoveAnimator mBatchRemoveAnimator;
+
     private LiftAnimator mLiftAnimator;
 
     private DropAnimator mDropAnimator;
 
+    private OrderAnimator mOrderAnimator;
+
     private boolean mUseRemoveVelocity;
+
+    /**
+     * Set during DropListener and RemoveListener callbacks.
+     */
+    private boolean mReordering = false;
+
+    /**
+     * Kept so that drag-scroll steps which skip layout can still
+     * report the scroll.
+     */
+    private OnScrollListener mOnScrollListener;
     private float mRemoveVelocityX = 0;
 
+    /**
+     * Paces per-frame drag-sort work.
+     */
+    private FrameScheduler mFrameScheduler;
+
+    /**
+     * If true, ACTION_MOVE events during a drag only record the
+     * touch location, which is then processed once per frame.
+     */
+    private boolean mCoalesceDragMoves = false;
+
+    /**
+     * If true, a {@link DragScrubber} track is shown along the right
+     * edge of the list during a drag.
+     */
+    private boolean mScrubberEnabled = false;
+
+    private DragScrubber mDragScrubber;
+
+    /**
+     * A recorded drag move is waiting for the next frame.
+     */
+    private boolean mDragMovePending = false;
+    private int mPendingMoveX;
+    private int mPendingMoveY;
+
+    /**
+     * Vertical touch velocity in pixels/ms, estimated from the
+     * samples batched into the most recent ACTION_MOVE.
+     */
+    private float mDragVelocityY = 0;
+    private long mLastMoveTime;
+    private int mLastMoveY;
+
+    private FrameCallback mDragMoveCallback = new FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            flushDragMove();
+        }
+    };
+
     public DragSortListView(Context context, AttributeSet attrs) {
         super(context, attrs);
 
@@ -472,6 +653,20 @@ public class DragSortListView extends ListView {
 
             mAnimate = mSlideRegionFrac > 0.0f;
 
+            mShuffleMode = a.getInt(R.styleable.DragSortListView_shuffle_mode,
+                    mShuffleMode);
+
+            mFloatRenderMode = a.getInt(R.styleable.DragSortListView_float_render_mode,
+                    mFloatRenderMode);
+
+            mCoalesceDragMoves = a.getBoolean(
+                    R.styleable.DragSortListView_coalesce_drag_moves,
+                    mCoalesceDragMoves);
+
+            mScrubberEnabled = a.getBoolean(
+                    R.styleable.DragSortListView_drag_scrubber,
+                    mScrubberEnabled);
+
             float frac = a.getFloat(
                     R.styleable.DragSortListView_drag_scroll_start,
                     mDragUpScrollStartFrac);
@@ -482,6 +677,15 @@ public class DragSortListView extends ListView {
                     R.styleable.DragSortListView_max_drag_scroll_speed,
                     mMaxScrollSpeed);
 
+            int scrollProfile = a.getInt(
+                    R.styleable.DragSortListView_drag_scroll_profile,
+                    DRAG_SCROLL_LINEAR);
+            if (scrollProfile == DRAG_SCROLL_ACCELERATING) {
+                setDragScrollProfile(new AcceleratingDragScrollProfile(this));
+            } else if (scrollProfile == DRAG_SCROLL_ITEM_RATE) {
+                setDragScrollProfile(new ItemRateDragScrollProfile(this));
+            }
+
             removeAnimDuration = a.getInt(
                     R.styleable.DragSortListView_remove_animation_duration,
                     removeAnimDuration);
@@ -526,6 +730,17 @@ public class DragSortListView extends ListView {
                 controller.setRemoveEnabled(removeEnabled);
                 controller.setSortEnabled(sortEnabled);
                 controller.setBackgroundColor(bgColor);
+                controller.setSnapshotFormat(a.getInt(
+                        R.styleable.DragSortListView_float_snapshot_format,
+                        SimpleFloatViewManager.SNAPSHOT_ARGB_8888));
+                controller.setSnapshotScale(a.getFloat(
+                        R.styleable.DragSortListView_float_snapshot_scale, 1.0f));
+                controller.setAsyncSnapshot(a.getBoolean(
+                        R.styleable.DragSortListView_float_snapshot_async, false));
+                controller.setFloatCacheSize(a.getInt(
+                        R.styleable.DragSortListView_float_cache_size, 0));
+                controller.setSpeculativeLift(a.getBoolean(
+                        R.styleable.DragSortListView_speculative_lift, false));
 
                 mFloatViewManager = controller;
                 setOnTouchListener(controller);
@@ -534,15 +749,19 @@ public class DragSortListView extends ListView {
             a.recycle();
         }
 
+        mFrameScheduler = new FrameScheduler();
         mDragScroller = new DragScroller();
+        mDragScrubber = new DragScrubber(context);
 
         float smoothness = 0.5f;
         if (removeAnimDuration > 0) {
             mRemoveAnimator = new RemoveAnimator(smoothness, removeAnimDuration);
+            mBatchRemoveAnimator = new BatchRemoveAnimator(smoothness, removeAnimDuration);
         }
         // mLiftAnimator = new LiftAnimator(smoothness, 100);
         if (dropAnimDuration > 0) {
             mDropAnimator = new DropAnimator(smoothness, dropAnimDuration);
+            mOrderAnimator = new OrderAnimator(smoothness, dropAnimDuration);
         }
 
         mCancelEvent = MotionEvent.obtain(0, 0, MotionEvent.ACTION_CANCEL, 0f, 0f, 0f, 0f, 0, 0f,
@@ -591,6 +810,96 @@ public class DragSortListView extends ListView {
         mMaxScrollSpeed = max;
     }
 
+    /**
+     * @return Maximum drag scroll speed of the default linear profile,
+     * in pixels/ms. The built-in profiles use it as their base speed.
+     */
+    public float getMaxScrollSpeed() {
+        return mMaxScrollSpeed;
+    }
+
+    /**
+     * Set how items make room for the floating View. One of
+     * {@link #SHUFFLE_RELAYOUT} (default) or {@link #SHUFFLE_TRANSLATE}.
+     * In translate mode, no ListView layout occurs while the drop
+     * slot moves; items are simply drawn at new locations and the
+     * layout is committed on drop or remove. Note that ListView
+     * dividers are not translated along with the items. Takes effect
+     * on the next drag.
+     *
+     * @param mode The shuffle mode.
+     */
+    public void setShuffleMode(int mode) {
+        mShuffleMode = mode;
+    }
+
+    public int getShuffleMode() {
+        return mShuffleMode;
+    }
+
+    /**
+     * Set where the floating View is drawn. One of
+     * {@link #FLOAT_RENDER_INLINE} (default) or
+     * {@link #FLOAT_RENDER_WINDOW}. In window mode, the floating View
+     * is not clipped to the ListView bounds, and its window is moved
+     * at most once per display frame. A floating View that already
+     * has a parent is always drawn inline. Takes effect on the next
+     * drag.
+     *
+     * @param mode The float render mode.
+     */
+    public void setFloatRenderMode(int mode) {
+        mFloatRenderMode = mode;
+    }
+
+    public int getFloatRenderMode() {
+        return mFloatRenderMode;
+    }
+
+    /**
+     * If enabled, touch moves during a drag are coalesced so that
+     * the floating View and drop slot are updated at most once per
+     * display frame, no matter how often the touch screen reports.
+     *
+     * @param enabled Set <code>true</code> to coalesce drag moves.
+     */
+    public void setCoalesceDragMoves(boolean enabled) {
+        mCoalesceDragMoves = enabled;
+        if (!enabled) {
+            flushDragMove();
+        }
+    }
+
+    public boolean isCoalesceDragMoves() {
+        return mCoalesceDragMoves;
+    }
+
+    /**
+     * If enabled, a scrubber track is shown along the right edge of
+     * the list while dragging, provided not all items fit onscreen.
+     * Dragging onto the track jumps the list to the item whose
+     * proportional position matches the touch, or to the start of
+     * the matching section if the input adapter implements
+     * {@link SectionIndexer}. Makes long-distance moves in long
+     * lists practical. A drag that starts on the track does not
+     * scrub until the touch has left it and come back.
+     *
+     * @param enabled Set <code>true</code> to show the scrubber.
+     */
+    public void setDragScrubberEnabled(boolean enabled) {
+        mScrubberEnabled = enabled;
+    }
+
+    public boolean isDragScrubberEnabled() {
+        return mScrubberEnabled;
+    }
+
+    @Override
+    public void setOnScrollListener(OnScrollListener l) {
+        super.setOnScrollListener(l);
+        mOnScrollListener = l;
+    }
+
     /**
      * For each DragSortListView Listener interface implemented by
      * <code>adapter</code>, this method calls the appropriate
@@ -641,17 +950,47 @@ public class DragSortListView extends ListView {
     private class AdapterWrapper extends BaseAdapter {
         private ListAdapter mAdapter;
 
+        /**
+         * Item Views bound ahead of time by the
+         * {@link HeightPrefetcher}, keyed by position in the input
+         * adapter. Handed out (once) by getView() in place of
+         * binding a convertView.
+         */
+        private SparseArray<View> mPrefetched = new SparseArray<View>();
+        private SparseIntArray mPrefetchedTypes = new SparseIntArray();
+
+        /**
+         * Item Views owned by DSLV rather than the ListView, free to
+         * be rebound by prefetch(); by view type. Filled with
+         * prefetched Views that went unused, and with the wrappers
+         * left over when a prefetched child is handed to the
+         * ListView inside its own convertView.
+         */
+        private SparseArray<ArrayList<View>> mPool = new SparseArray<ArrayList<View>>();
+
         public AdapterWrapper(ListAdapter adapter) {
             super();
             mAdapter = adapter;
             
             mAdapter.registerDataSetObserver(new DataSetObserver() {
                 public void onChanged() {
-                    notifyDataSetChanged();
+                    clearPrefetched();
+                    if (mBatchDepth > 0) {
+                        mBatchDataChanged = true;
+                        mBatchContentChanged |= !mReordering;
+                    } else {
+                        notifyDataSetChanged();
+                    }
                 }
 
                 public void onInvalidated() {
-                    notifyDataSetInvalidated();
+                    clearPrefetched();
+                    if (mBatchDepth > 0) {
+                        mBatchDataInvalidated = true;
+                        mBatchContentChanged |= !mReordering;
+                    } else {
+                        notifyDataSetInvalidated();
+                    }
                 }
             });
         }
@@ -660,6 +999,78 @@ public class DragSortListView extends ListView {
             return mAdapter;
         }
 
+        /**
+         * Binds the item View for position now, so that the next
+         * getView() call for it is free.
+         *
+         * @return The bound item View.
+         */
+        public View prefetch(int position) {
+            View v = mPrefetched.get(position);
+            if (v == null) {
+                final int type = getItemViewType(position);
+                v = getView(position, obtainPooled(type), DragSortListView.this);
+                mPrefetched.put(position, v);
+                mPrefetchedTypes.put(position, type);
+            }
+            return v;
+        }
+
+        /**
+         * @return The View prefetched for position, or null.
+         */
+        public View getPrefetched(int position) {
+            return mPrefetched.get(position);
+        }
+
+        /**
+         * Drops prefetched Views outside of [from, to].
+         */
+        public void retainPrefetched(int from, int to) {
+            for (int i = mPrefetched.size() - 1; i >= 0; --i) {
+                final int position = mPrefetched.keyAt(i);
+                if (position < from || position > to) {
+                    recycle(mPrefetched.valueAt(i), mPrefetchedTypes.get(position, -1));
+                    mPrefetchedTypes.delete(position);
+                    mPrefetched.removeAt(i);
+                }
+            }
+        }
+
+        public void clearPrefetched() {
+            for (int i = 0; i < mPrefetched.size(); ++i) {
+                recycle(mPrefetched.valueAt(i),
+                        mPrefetchedTypes.get(mPrefetched.keyAt(i), -1));
+            }
+            mPrefetched.clear();
+            mPrefetchedTypes.clear();
+        }
+
+        private void recycle(View v, int type) {
+            if (type < 0) {
+                return;
+            }
+            ArrayList<View> pool = mPool.get(type);
+            if (pool == null) {
+                pool = new ArrayList<View>(sPrefetchCount);
+                mPool.put(type, pool);
+            }
+            if (pool.size() < sPrefetchCount) {
+                pool.add(v);
+            }
+        }
+
+        private View obtainPooled(int type) {
+            if (type < 0) {
+                return null;
+            }
+            ArrayList<View> pool = mPool.get(type);
+            if (pool == null || pool.isEmpty()) {
+                return null;
+            }
+            return pool.remove(pool.size() - 1);
+        }
+
         @Override
         public long getItemId(int position) {
             return mAdapter.getItemId(position);
@@ -713,8 +1124,36 @@ public class DragSortListView extends ListView {
             View child;
             // Log.d("mobeta",
             // "getView: position="+position+" convertView="+convertView);
-            if (convertView != null) {
+            View prefetched = mPrefetched.get(position);
+            if (prefetched != null) {
+                // already bound
+                mPrefetched.remove(position);
+                final int type = mPrefetchedTypes.get(position, -1);
+                mPrefetchedTypes.delete(position);
+
+                if (convertView != null) {
+                    // Hand the prefetched child over inside the
+                    // convertView, which the ListView would otherwise
+                    // scrap again. The prefetched wrapper takes the
+                    // old child and goes back to the pool.
+                    final DragSortItemView p = (DragSortItemView) prefetched;
+                    v = (DragSortItemView) convertView;
+                    View oldChild = v.getChildAt(0);
+                    child = p.getChildAt(0);
+                    p.removeViewAt(0);
+                    if (oldChild != null) {
+                        v.removeViewAt(0);
+                        p.addView(oldChild);
+                        recycle(p, type);
+                    }
+                    v.addView(child);
+                } else {
+                    v = (DragSortItemView) prefetched;
+                }
+                v.setShuffleOffset(0);
+            } else if (convertView != null) {
                 v = (DragSortItemView) convertView;
+                v.setShuffleOffset(0);
                 View oldChild = v.getChildAt(0);
 
                 child = mAdapter.getView(position, oldChild, DragSortListView.this);
@@ -765,10 +1204,10 @@ public class DragSortListView extends ListView {
                 final int childHeight = expItem.getChildAt(0).getHeight();
 
                 if (expPosition > mSrcPos) {
-                    t = expItem.getTop() + childHeight;
+                    t = getItemTop(expPosition) + childHeight;
                     b = t + dividerHeight;
                 } else {
-                    b = expItem.getBottom() - childHeight;
+                    b = getItemBottom(expPosition) - childHeight;
                     t = b - dividerHeight;
                 }
                 // Log.d("mobeta", "l="+l+" t="+t+" r="+r+" b="+b);
@@ -797,25 +1236,16 @@ public class DragSortListView extends ListView {
             }
         }
 
-        if (mFloatView != null) {
+        if (mDragScrubber.isShown()) {
+            mDragScrubber.draw(canvas);
+        }
+
+        if (mFloatView != null && !mFloatInWindow) {
             // draw the float view over everything
             final int w = mFloatView.getWidth();
             final int h = mFloatView.getHeight();
 
-            int x = mFloatLoc.x;
-
-            int width = getWidth();
-            if (x < 0)
-                x = -x;
-            float alphaMod;
-            if (x < width) {
-                alphaMod = ((float) (width - x)) / ((float) width);
-                alphaMod *= alphaMod;
-            } else {
-                alphaMod = 0;
-            }
-
-            final int alpha = (int) (255f * mCurrFloatAlpha * alphaMod);
+            final int alpha = (int) (255f * getFloatViewAlpha());
 
             canvas.save();
             // Log.d("mobeta", "clip rect bounds: " + canvas.getClipBounds());
@@ -823,17 +1253,68 @@ public class DragSortListView extends ListView {
             canvas.clipRect(0, 0, w, h);
 
             // Log.d("mobeta", "clip rect bounds: " + canvas.getClipBounds());
-            canvas.saveLayerAlpha(0, 0, w, h, alpha, Canvas.ALL_SAVE_FLAG);
-            mFloatView.draw(canvas);
-            canvas.restore();
+            // An offscreen layer is costly; avoid it when the
+            // floating View is opaque or can fade itself.
+            if (alpha == 255) {
+                if (mFloatAlphaSet) {
+                    ((ImageView) mFloatView).setAlpha(255);
+                    mFloatAlphaSet = false;
+                }
+                mFloatView.draw(canvas);
+            } else if (isFloatSnapshot()) {
+                ((ImageView) mFloatView).setAlpha(alpha);
+                mFloatAlphaSet = true;
+                mFloatView.draw(canvas);
+            } else {
+                canvas.saveLayerAlpha(0, 0, w, h, alpha, Canvas.ALL_SAVE_FLAG);
+                mFloatView.draw(canvas);
+                canvas.restore();
+            }
             canvas.restore();
+
+            mFloatDrawnRect.set(mFloatLoc.x, mFloatLoc.y, mFloatLoc.x + w, mFloatLoc.y + h);
+        } else {
+            mFloatDrawnRect.setEmpty();
         }
     }
 
+    /**
+     * True if the floating View is a background-less snapshot
+     * ImageView made by {@link SimpleFloatViewManager}, which DSLV
+     * may fade with {@link ImageView#setAlpha(int)}. Views from
+     * other FloatViewManagers keep whatever alpha they were given.
+     */
+    private boolean isFloatSnapshot() {
+        return mFloatViewManager instanceof SimpleFloatViewManager
+                && mFloatView.getBackground() == null
+                && ((SimpleFloatViewManager) mFloatViewManager).isSnapshotView(mFloatView);
+    }
+
+    /**
+     * Current alpha of the floating View, which fades as it is
+     * dragged sideways.
+     */
+    private float getFloatViewAlpha() {
+        int x = mFloatLoc.x;
+
+        int width = getWidth();
+        if (x < 0)
+            x = -x;
+        float alphaMod;
+        if (x < width) {
+            alphaMod = ((float) (width - x)) / ((float) width);
+            alphaMod *= alphaMod;
+        } else {
+            alphaMod = 0;
+        }
+
+        return mCurrFloatAlpha * alphaMod;
+    }
+
     private int getItemHeight(int position) {
         View v = getChildAt(position - getFirstVisiblePosition());
 
-        if (v != null) {
+        if (v != null && !mShuffleTranslating) {
             // item is onscreen, just get the height of the View
             return v.getHeight();
         } else {
@@ -843,6 +1324,33 @@ public class DragSortListView extends ListView {
         }
     }
 
+    /**
+     * Top of the onscreen item at <code>position</code> as it is
+     * currently drawn. Differs from the View top only while
+     * translation shuffling.
+     */
+    private int getItemTop(int position) {
+        final int index = position - getFirstVisiblePosition();
+        if (mShuffleTranslating) {
+            return mShuffleTops[index];
+        } else {
+            return getChildAt(index).getTop();
+        }
+    }
+
+    /**
+     * Bottom of the onscreen item at <code>position</code> as it is
+     * currently drawn. See {@link #getItemTop(int)}.
+     */
+    private int getItemBottom(int position) {
+        final int index = position - getFirstVisiblePosition();
+        if (mShuffleTranslating) {
+            return mShuffleBottoms[index];
+        } else {
+            return getChildAt(index).getBottom();
+        }
+    }
+
     private void printPosData() {
         Log.d("mobeta", "mSrcPos=" + mSrcPos + " mFirstExpPos=" + mFirstExpPos + " mSecondExpPos="
                 + mSecondExpPos);
@@ -851,12 +1359,19 @@ public class DragSortListView extends ListView {
     private class HeightCache {
 
         private SparseIntArray mMap;
-        private ArrayList<Integer> mOrder;
+
+        /**
+         * Cached positions from oldest to newest, in a ring buffer
+         * starting at mHead. Kept as ints so that caching a height
+         * during a drag allocates nothing.
+         */
+        private int[] mOrder;
+        private int mHead = 0;
         private int mMaxSize;
 
         public HeightCache(int size) {
             mMap = new SparseIntArray(size);
-            mOrder = new ArrayList<Integer>(size);
+            mOrder = new int[size];
             mMaxSize = size;
         }
 
@@ -866,17 +1381,27 @@ public class DragSortListView extends ListView {
         public void add(int position, int height) {
             int currHeight = mMap.get(position, -1);
             if (currHeight != height) {
+                int size = mMap.size();
                 if (currHeight == -1) {
-                    if (mMap.size() == mMaxSize) {
+                    if (size == mMaxSize) {
                         // remove oldest entry
-                        mMap.delete(mOrder.remove(0));
+                        mMap.delete(mOrder[mHead]);
+                        mHead = (mHead + 1) % mMaxSize;
+                        size--;
                     }
                 } else {
                     // move position to newest slot
-                    mOrder.remove((Integer) position);
+                    int i = 0;
+                    while (mOrder[(mHead + i) % mMaxSize] != position) {
+                        i++;
+                    }
+                    size--;
+                    for (; i < size; ++i) {
+                        mOrder[(mHead + i) % mMaxSize] = mOrder[(mHead + i + 1) % mMaxSize];
+                    }
                 }
+                mOrder[(mHead + size) % mMaxSize] = position;
                 mMap.put(position, height);
-                mOrder.add(position);
             }
         }
 
@@ -886,9 +1411,82 @@ public class DragSortListView extends ListView {
 
         public void clear() {
             mMap.clear();
-            mOrder.clear();
+            mHead = 0;
+        }
+
+    }
+
+    /**
+     * Binds and measures the rows about to be scrolled onscreen by
+     * a drag-scroll while the UI thread is idle between frames. The
+     * bound Views are held by the {@link AdapterWrapper} and their
+     * heights by {@link #mChildHeightCache}, so that the frames that
+     * reach these rows neither bind nor measure them synchronously.
+     * Rows are bound into recycled Views, so a steady drag-scroll
+     * neither inflates nor drops Views.
+     */
+    private class HeightPrefetcher implements MessageQueue.IdleHandler {
+
+        /**
+         * Longest time spent prefetching per idle callback, in ns.
+         */
+        private final static long BUDGET = 4000000L;
+
+        private boolean mQueued = false;
+
+        public void start() {
+            if (!mQueued) {
+                mQueued = true;
+                Looper.myQueue().addIdleHandler(this);
+            }
+        }
+
+        public void stop() {
+            if (mQueued) {
+                mQueued = false;
+                Looper.myQueue().removeIdleHandler(this);
+            }
         }
 
+        @Override
+        public boolean queueIdle() {
+            final int dir = mDragScroller.getScrollDir();
+            if (dir == DragScroller.STOP || getChildCount() == 0 || mAdapterWrapper == null) {
+                mQueued = false;
+                return false;
+            }
+
+            final int numHeaders = getHeaderViewsCount();
+            final int first = numHeaders;
+            final int last = getCount() - getFooterViewsCount() - 1;
+            final int step = dir == DragScroller.DOWN ? 1 : -1;
+            int pos = dir == DragScroller.DOWN ? getLastVisiblePosition() + 1
+                    : getFirstVisiblePosition() - 1;
+
+            // rows left behind, e.g. after a change of direction,
+            // are not coming onscreen soon
+            final int end = pos + step * (sPrefetchCount - 1);
+            mAdapterWrapper.retainPrefetched(Math.min(pos, end) - numHeaders,
+                    Math.max(pos, end) - numHeaders);
+
+            final long start = System.nanoTime();
+            for (int i = 0; i < sPrefetchCount; ++i, pos += step) {
+                if (pos < first || pos > last) {
+                    break;
+                }
+                if (mAdapterWrapper.getPrefetched(pos - numHeaders) == null) {
+                    View v = mAdapterWrapper.prefetch(pos - numHeaders);
+                    if (pos != mSrcPos && mChildHeightCache.get(pos) == -1) {
+                        mChildHeightCache.add(pos, getChildHeight(pos, v, true));
+                    }
+                    if (System.nanoTime() - start > BUDGET) {
+                        break;
+                    }
+                }
+            }
+
+            return true;
+        }
     }
 
     /**
@@ -980,9 +1578,9 @@ public class DragSortListView extends ListView {
             startPos = first + getChildCount() / 2;
             startView = getChildAt(startPos - first);
         }
-        int startTop = startView.getTop();
+        int startTop = getItemTop(startPos);
 
-        int itemHeight = startView.getHeight();
+        int itemHeight = getItemHeight(startPos);
 
         int edge = getShuffleEdge(startPos, startTop);
         int lastEdge = edge;
@@ -1128,19 +1726,198 @@ public class DragSortListView extends ListView {
         }
     }
 
-    private class SmoothAnimator implements Runnable {
-        protected long mStartTime;
+    /**
+     * Callback run by the {@link FrameScheduler}.
+     */
+    private interface FrameCallback {
+        /**
+         * @param frameTimeNanos Time (System.nanoTime() base) at which
+         * the frame started.
+         */
+        public void doFrame(long frameTimeNanos);
+    }
 
-        private float mDurationF;
+    /**
+     * Runs posted FrameCallbacks once per display frame, input
+     * callbacks before animation callbacks. A callback runs once
+     * per post; post again from doFrame() to run on the next frame.
+     * Vsync is not exposed at this API level, so frames are
+     * paced on a grid at the display refresh rate.
+     */
+    private class FrameScheduler implements Runnable {
+        public final static int CALLBACK_INPUT = 0;
+        public final static int CALLBACK_ANIMATION = 1;
+        private final static int CALLBACK_TYPES = 2;
 
-        private float mAlpha;
-        private float mA, mB, mC, mD;
+        private FrameCallback[][] mQueues = new FrameCallback[CALLBACK_TYPES][4];
+        private int[] mQueueSizes = new int[CALLBACK_TYPES];
 
-        private boolean mCanceled;
+        /**
+         * Callbacks being run in the current frame.
+         */
+        private FrameCallback[] mRunning = new FrameCallback[4];
+        private int mRunningSize = 0;
+
+        private long mFrameIntervalNanos;
+        private long mLastFrameTimeNanos = 0;
+        private boolean mScheduled = false;
+
+        public FrameScheduler() {
+            float refreshRate = 60f;
+            WindowManager wm = (WindowManager) getContext().getSystemService(
+                    Context.WINDOW_SERVICE);
+            if (wm != null) {
+                Display display = wm.getDefaultDisplay();
+                if (display != null) {
+                    refreshRate = display.getRefreshRate();
+                }
+            }
+            // some devices report nonsense
+            if (refreshRate < 20f || refreshRate > 240f) {
+                refreshRate = 60f;
+            }
+            mFrameIntervalNanos = (long) (1000000000L / refreshRate);
+        }
 
-        public SmoothAnimator(float smoothness, int duration) {
-            mAlpha = smoothness;
-            mDurationF = (float) duration;
+        public long getFrameIntervalNanos() {
+            return mFrameIntervalNanos;
+        }
+
+        public void postFrameCallback(int type, FrameCallback callback) {
+            FrameCallback[] queue = mQueues[type];
+            final int size = mQueueSizes[type];
+            for (int i = 0; i < size; ++i) {
+                if (queue[i] == callback) {
+                    scheduleFrame();
+                    return;
+                }
+            }
+
+            if (size == queue.length) {
+                FrameCallback[] grown = new FrameCallback[2 * size];
+                System.arraycopy(queue, 0, grown, 0, size);
+                mQueues[type] = queue = grown;
+            }
+            queue[size] = callback;
+            mQueueSizes[type] = size + 1;
+
+            scheduleFrame();
+        }
+
+        public void removeFrameCallback(int type, FrameCallback callback) {
+            FrameCallback[] queue = mQueues[type];
+            int size = mQueueSizes[type];
+            for (int i = 0; i < size; ++i) {
+                if (queue[i] == callback) {
+                    System.arraycopy(queue, i + 1, queue, i, size - i - 1);
+                    queue[--size] = null;
+                    mQueueSizes[type] = size;
+                    break;
+                }
+            }
+
+            // also skip it if the current frame has yet to reach it
+            for (int i = 0; i < mRunningSize; ++i) {
+                if (mRunning[i] == callback) {
+                    mRunning[i] = null;
+                }
+            }
+        }
+
+        /**
+         * Drops all pending callbacks and the scheduled frame.
+         */
+        public void cancelAll() {
+            removeCallbacks(this);
+            mScheduled = false;
+            for (int type = 0; type < CALLBACK_TYPES; ++type) {
+                final FrameCallback[] queue = mQueues[type];
+                for (int i = 0; i < mQueueSizes[type]; ++i) {
+                    queue[i] = null;
+                }
+                mQueueSizes[type] = 0;
+            }
+            for (int i = 0; i < mRunningSize; ++i) {
+                mRunning[i] = null;
+            }
+        }
+
+        private void scheduleFrame() {
+            if (!mScheduled) {
+                mScheduled = true;
+                postDelayed(this, getDelayToNextFrame(System.nanoTime()));
+            }
+        }
+
+        private long getDelayToNextFrame(long now) {
+            final long next = (now / mFrameIntervalNanos + 1) * mFrameIntervalNanos;
+            // round up so that we never wake before the frame
+            return (next - now + 999999L) / 1000000L;
+        }
+
+        @Override
+        public void run() {
+            final long now = System.nanoTime();
+            final long frameTime = now - now % mFrameIntervalNanos;
+
+            if (frameTime <= mLastFrameTimeNanos) {
+                // already ran this frame
+                postDelayed(this, getDelayToNextFrame(now));
+                return;
+            }
+
+            mScheduled = false;
+            mLastFrameTimeNanos = frameTime;
+
+            for (int type = 0; type < CALLBACK_TYPES; ++type) {
+                final int size = mQueueSizes[type];
+                if (size == 0) {
+                    continue;
+                }
+
+                if (mRunning.length < size) {
+                    mRunning = new FrameCallback[mQueues[type].length];
+                }
+                System.arraycopy(mQueues[type], 0, mRunning, 0, size);
+                mRunningSize = size;
+                for (int i = 0; i < size; ++i) {
+                    mQueues[type][i] = null;
+                }
+                mQueueSizes[type] = 0;
+
+                for (int i = 0; i < size; ++i) {
+                    final FrameCallback callback = mRunning[i];
+                    if (callback != null) {
+                        mRunning[i] = null;
+                        callback.doFrame(frameTime);
+                    }
+                }
+                mRunningSize = 0;
+            }
+        }
+    }
+
+    private class SmoothAnimator implements FrameCallback {
+        /**
+         * Start time in nanoseconds (System.nanoTime() base).
+         */
+        protected long mStartTime;
+
+        /**
+         * Start time of the frame being animated.
+         */
+        protected long mFrameTimeNanos;
+
+        private float mDurationF;
+
+        private float mAlpha;
+        private float mA, mB, mC, mD;
+
+        private boolean mCanceled;
+
+        public SmoothAnimator(float smoothness, int duration) {
+            mAlpha = smoothness;
+            mDurationF = (float) duration;
             mA = mD = 1f / (2f * mAlpha * (1f - mAlpha));
             mB = mAlpha / (2f * (mAlpha - 1f));
             mC = 1f / (1f - mAlpha);
@@ -1157,14 +1934,15 @@ public class DragSortListView extends ListView {
         }
 
         public void start() {
-            mStartTime = SystemClock.uptimeMillis();
+            mStartTime = System.nanoTime();
             mCanceled = false;
             onStart();
-            post(this);
+            mFrameScheduler.postFrameCallback(FrameScheduler.CALLBACK_ANIMATION, this);
         }
 
         public void cancel() {
             mCanceled = true;
+            mFrameScheduler.removeFrameCallback(FrameScheduler.CALLBACK_ANIMATION, this);
         }
 
         public void onStart() {
@@ -1180,20 +1958,227 @@ public class DragSortListView extends ListView {
         }
 
         @Override
-        public void run() {
+        public void doFrame(long frameTimeNanos) {
             if (mCanceled) {
                 return;
             }
 
-            float fraction = ((float) (SystemClock.uptimeMillis() - mStartTime)) / mDurationF;
+            mFrameTimeNanos = frameTimeNanos;
+
+            // first frame may begin slightly before start()
+            float fraction = Math.max(0f,
+                    ((float) (frameTimeNanos - mStartTime)) / 1000000f / mDurationF);
 
             if (fraction >= 1f) {
                 onUpdate(1f, 1f);
                 onStop();
             } else {
                 onUpdate(fraction, transform(fraction));
-                post(this);
+                if (!mCanceled) {
+                    mFrameScheduler.postFrameCallback(FrameScheduler.CALLBACK_ANIMATION, this);
+                }
+            }
+        }
+    }
+
+    /**
+     * Collapses all onscreen items being removed by
+     * {@link DragSortListView#removeItems(int[])} at once, then
+     * removes them.
+     */
+    private class BatchRemoveAnimator extends SmoothAnimator {
+
+        /**
+         * Sorted positions in the input ListAdapter.
+         */
+        private int[] mPositions;
+
+        /**
+         * Item heights at the start of the animation, or 0 for items
+         * that were offscreen.
+         */
+        private int[] mStartHeights = new int[0];
+
+        public BatchRemoveAnimator(float smoothness, int duration) {
+            super(smoothness, duration);
+        }
+
+        public void start(int[] positions) {
+            mPositions = positions;
+            start();
+        }
+
+        @Override
+        public void onStart() {
+            mDragState = REMOVING;
+
+            final int n = mPositions.length;
+            if (mStartHeights.length < n) {
+                mStartHeights = new int[n];
+            }
+
+            final int first = getFirstVisiblePosition() - getHeaderViewsCount();
+            for (int i = 0; i < n; ++i) {
+                View v = getChildAt(mPositions[i] - first);
+                if (v != null) {
+                    mStartHeights[i] = v.getHeight();
+                    v.setVisibility(View.INVISIBLE);
+                } else {
+                    mStartHeights[i] = 0;
+                }
+            }
+        }
+
+        @Override
+        public void onUpdate(float frac, float smoothFrac) {
+            float f = 1f - smoothFrac;
+
+            final int first = getFirstVisiblePosition() - getHeaderViewsCount();
+
+            for (int i = 0; i < mPositions.length; ++i) {
+                if (mStartHeights[i] == 0) {
+                    continue;
+                }
+                View v = getChildAt(mPositions[i] - first);
+                if (v != null) {
+                    resizeChild(v, Math.max((int) (f * mStartHeights[i]), 1));
+                }
             }
+            layoutResizedChildren();
+        }
+
+        @Override
+        public void onStop() {
+            doRemoveItems(mPositions);
+        }
+    }
+
+    /**
+     * Slides onscreen items from where they were drawn before
+     * {@link DragSortListView#animateToOrder(int[])} to where they
+     * were laid out after it, by shrinking draw offsets. Items that
+     * come from offscreen slide in from the nearest list edge.
+     */
+    private class OrderAnimator extends SmoothAnimator {
+
+        /**
+         * Input ListAdapter position and starting offset of each
+         * animated item.
+         */
+        private int[] mPositions = new int[0];
+        private int[] mStartOffsets = new int[0];
+        private int mCount;
+
+        private boolean mRunning = false;
+
+        /**
+         * Permutation to animate after the next layout pass, or
+         * null.
+         */
+        private int[] mPending;
+
+        public OrderAnimator(float smoothness, int duration) {
+            super(smoothness, duration);
+        }
+
+        /**
+         * Starts the animation once the next layout pass has put
+         * the items in their new order.
+         */
+        public void startAfterLayout(int[] permutation) {
+            mPending = permutation;
+        }
+
+        /**
+         * Called at the end of every layout pass.
+         */
+        public void onLayout() {
+            if (mPending != null) {
+                final int[] permutation = mPending;
+                mPending = null;
+                start(permutation);
+            }
+        }
+
+        public void start(int[] permutation) {
+            final int numHeaders = getHeaderViewsCount();
+            final int first = getFirstVisiblePosition();
+            final int count = getChildCount();
+            final int listTop = getPaddingTop();
+            final int listBottom = getHeight() - getPaddingBottom();
+
+            if (mPositions.length < count) {
+                mPositions = new int[count];
+                mStartOffsets = new int[count];
+            }
+
+            mCount = 0;
+            for (int i = 0; i < count; ++i) {
+                final int position = first + i - numHeaders;
+                if (position < 0 || position >= permutation.length) {
+                    continue;
+                }
+
+                final View v = getChildAt(i);
+                if (!(v instanceof DragSortItemView)) {
+                    continue;
+                }
+
+                final int old = permutation[position];
+                int startTop;
+                if (old < mOrderTopsFirst) {
+                    startTop = listTop - v.getHeight();
+                } else if (old >= mOrderTopsFirst + mOrderTopsCount) {
+                    startTop = listBottom;
+                } else {
+                    startTop = mOrderTops[old - mOrderTopsFirst];
+                }
+
+                final int offset = startTop - v.getTop();
+                if (offset != 0) {
+                    mPositions[mCount] = position;
+                    mStartOffsets[mCount] = offset;
+                    mCount++;
+                    ((DragSortItemView) v).setShuffleOffset(offset);
+                }
+            }
+
+            if (mCount > 0) {
+                mRunning = true;
+                invalidate();
+                start();
+            }
+        }
+
+        /**
+         * Jumps to the end of a running animation.
+         */
+        public void finish() {
+            mPending = null;
+            if (mRunning) {
+                cancel();
+                onStop();
+            }
+        }
+
+        @Override
+        public void onUpdate(float frac, float smoothFrac) {
+            final float f = 1f - smoothFrac;
+            final int first = getFirstVisiblePosition() - getHeaderViewsCount();
+            for (int i = 0; i < mCount; ++i) {
+                final View v = getChildAt(mPositions[i] - first);
+                if (v instanceof DragSortItemView) {
+                    ((DragSortItemView) v).setShuffleOffset((int) (f * mStartOffsets[i]));
+                }
+            }
+            invalidate();
+        }
+
+        @Override
+        public void onStop() {
+            mRunning = false;
+            // also clears offsets left on items recycled meanwhile
+            clearItemOffsets();
         }
     }
 
@@ -1258,13 +2243,13 @@ public class DragSortListView extends ListView {
             int targetY = -1;
             if (v != null) {
                 if (mDropPos == srcPos) {
-                    targetY = v.getTop();
+                    targetY = getItemTop(mDropPos);
                 } else if (mDropPos < srcPos) {
                     // expanded down
-                    targetY = v.getTop() - otherAdjust;
+                    targetY = getItemTop(mDropPos) - otherAdjust;
                 } else {
                     // expanded up
-                    targetY = v.getBottom() + otherAdjust - mFloatViewHeight;
+                    targetY = getItemBottom(mDropPos) + otherAdjust - mFloatViewHeight;
                 }
             } else {
                 // drop position is not on screen?? no animation
@@ -1284,7 +2269,7 @@ public class DragSortListView extends ListView {
             if (f < Math.abs(deltaY / mInitDeltaY) || f < Math.abs(deltaX / mInitDeltaX)) {
                 mFloatLoc.y = targetY + (int) (mInitDeltaY * f);
                 mFloatLoc.x = getPaddingLeft() + (int) (mInitDeltaX * f);
-                doDragFloatView(true);
+                moveFloatView();
             }
         }
 
@@ -1311,6 +2296,14 @@ public class DragSortListView extends ListView {
         private int mSecondPos;
         private int srcPos;
 
+        private boolean mCollapseStarted;
+
+        /**
+         * Collapse by drawing items at offsets instead of
+         * resizing them.
+         */
+        private boolean mTranslate;
+
         public RemoveAnimator(float smoothness, int duration) {
             super(smoothness, duration);
         }
@@ -1319,6 +2312,7 @@ public class DragSortListView extends ListView {
         public void onStart() {
             mFirstChildHeight = -1;
             mSecondChildHeight = -1;
+            mCollapseStarted = false;
             mFirstPos = mFirstExpPos;
             mSecondPos = mSecondExpPos;
             srcPos = mSrcPos;
@@ -1347,12 +2341,11 @@ public class DragSortListView extends ListView {
 
             final int firstVis = getFirstVisiblePosition();
             View item = getChildAt(mFirstPos - firstVis);
-            ViewGroup.LayoutParams lp;
             int blank;
 
             if (mUseRemoveVelocity) {
-                float dt = (float) (SystemClock.uptimeMillis() - mStartTime) / 1000;
-                if (dt == 0)
+                float dt = (float) (mFrameTimeNanos - mStartTime) / 1000000000f;
+                if (dt <= 0)
                     return;
                 float dx = mRemoveVelocityX * dt;
                 int w = getWidth();
@@ -1360,39 +2353,117 @@ public class DragSortListView extends ListView {
                 mFloatLocX += dx;
                 mFloatLoc.x = (int) mFloatLocX;
                 if (mFloatLocX < w && mFloatLocX > -w) {
-                    mStartTime = SystemClock.uptimeMillis();
-                    doDragFloatView(true);
+                    mStartTime = mFrameTimeNanos;
+                    // drop slot is frozen during the fling
+                    updateFloatView();
+                    invalidateFloatView();
                     return;
                 }
             }
 
-            if (item != null) {
-                if (mFirstChildHeight == -1) {
-                    mFirstChildHeight = getChildHeight(mFirstPos, item, false);
-                    mFirstStartBlank = (float) (item.getHeight() - mFirstChildHeight);
+            if (!mCollapseStarted) {
+                startCollapse();
+            }
+
+            if (mTranslate) {
+                int firstShrink = 0;
+                int secondShrink = 0;
+                if (item != null) {
+                    blank = Math.max((int) (f * mFirstStartBlank), 1);
+                    firstShrink = (int) mFirstStartBlank - blank;
                 }
+                if (mSecondPos != mFirstPos && getChildAt(mSecondPos - firstVis) != null) {
+                    blank = Math.max((int) (f * mSecondStartBlank), 1);
+                    secondShrink = (int) mSecondStartBlank - blank;
+                }
+                offsetCollapse(firstShrink, secondShrink);
+                return;
+            }
+
+            if (item != null) {
                 blank = Math.max((int) (f * mFirstStartBlank), 1);
-                lp = item.getLayoutParams();
-                lp.height = mFirstChildHeight + blank;
-                item.setLayoutParams(lp);
+                resizeChild(item, mFirstChildHeight + blank);
             }
             if (mSecondPos != mFirstPos) {
                 item = getChildAt(mSecondPos - firstVis);
                 if (item != null) {
-                    if (mSecondChildHeight == -1) {
-                        mSecondChildHeight = getChildHeight(mSecondPos, item, false);
-                        mSecondStartBlank = (float) (item.getHeight() - mSecondChildHeight);
-                    }
                     blank = Math.max((int) (f * mSecondStartBlank), 1);
-                    lp = item.getLayoutParams();
-                    lp.height = mSecondChildHeight + blank;
-                    item.setLayoutParams(lp);
+                    resizeChild(item, mSecondChildHeight + blank);
                 }
             }
+            layoutResizedChildren();
+        }
+
+        private void startCollapse() {
+            mCollapseStarted = true;
+
+            final int firstVis = getFirstVisiblePosition();
+            int totalBlank = 0;
+
+            mFirstStartBlank = 0;
+            View item = getChildAt(mFirstPos - firstVis);
+            if (item != null) {
+                mFirstChildHeight = getChildHeight(mFirstPos, item, false);
+                mFirstStartBlank = (float) (item.getHeight() - mFirstChildHeight);
+                totalBlank += (int) mFirstStartBlank;
+            }
+
+            mSecondStartBlank = 0;
+            if (mSecondPos != mFirstPos) {
+                item = getChildAt(mSecondPos - firstVis);
+                if (item != null) {
+                    mSecondChildHeight = getChildHeight(mSecondPos, item, false);
+                    mSecondStartBlank = (float) (item.getHeight() - mSecondChildHeight);
+                    totalBlank += (int) mSecondStartBlank;
+                }
+            }
+
+            // Offsets cannot bring in items from below the list,
+            // nor move footers and dividers. Use them only when
+            // nothing of the sort would show.
+            final int lastVis = getLastVisiblePosition();
+            final View last = getChildAt(lastVis - firstVis);
+            final boolean covered = lastVis == getCount() - 1
+                    || (last != null && last.getBottom() - totalBlank >= getHeight()
+                            - getPaddingBottom());
+            mTranslate = covered
+                    && lastVis < getCount() - getFooterViewsCount()
+                    && (mShuffleMode == SHUFFLE_TRANSLATE || getDividerHeight() == 0);
+        }
+
+        /**
+         * Draws items as if the blank space at the expanded
+         * positions had shrunk by the given amounts.
+         */
+        private void offsetCollapse(int firstShrink, int secondShrink) {
+            final int first = getFirstVisiblePosition();
+            final int count = getChildCount();
+            for (int i = 0; i < count; ++i) {
+                final View v = getChildAt(i);
+                if (!(v instanceof DragSortItemView)) {
+                    continue;
+                }
+                final int position = first + i;
+                int offset = 0;
+                // blank space sits above the child for positions
+                // above the source
+                if (position > mFirstPos || (position == mFirstPos && position < srcPos)) {
+                    offset -= firstShrink;
+                }
+                if (mSecondPos != mFirstPos
+                        && (position > mSecondPos || (position == mSecondPos && position < srcPos))) {
+                    offset -= secondShrink;
+                }
+                ((DragSortItemView) v).setShuffleOffset(offset);
+            }
+            invalidate();
         }
 
         @Override
         public void onStop() {
+            if (mTranslate) {
+                clearItemOffsets();
+            }
             doRemoveItem();
         }
     }
@@ -1425,21 +2496,15 @@ public class DragSortListView extends ListView {
                 }
             }
 
+            // removal animations work on real item heights
+            commitShuffleLayout();
+
             mDragState = REMOVING;
             mRemoveVelocityX = velocityX;
 
-            if (mInTouchEvent) {
-                switch (mCancelMethod) {
-                    case ON_TOUCH_EVENT:
-                        super.onTouchEvent(mCancelEvent);
-                        break;
-                    case ON_INTERCEPT_TOUCH_EVENT:
-                        super.onInterceptTouchEvent(mCancelEvent);
-                        break;
-                }
-            }
+            cancelListViewTouch();
 
-            if (mRemoveAnimator != null) {
+            if (mRemoveAnimator != null && mBatchDepth == 0) {
                 mRemoveAnimator.start();
             } else {
                 doRemoveItem(which);
@@ -1447,6 +2512,84 @@ public class DragSortListView extends ListView {
         }
     }
 
+    /**
+     * Removes several items from the list, collapsing the onscreen
+     * ones together in a single animation. The RemoveListener is
+     * then called once, through
+     * {@link BatchRemoveListener#remove(int[])} if it implements
+     * that interface, or else through
+     * {@link RemoveListener#remove(int)} for each item (last item
+     * first) inside a batch (see {@link #beginBatch()}). Does
+     * nothing during a drag.
+     *
+     * @param positions Positions to remove, in any order (NOTE:
+     * headers/footers ignored! these are positions in your input
+     * ListAdapter). Out of range and repeated positions are
+     * skipped.
+     */
+    public void removeItems(int[] positions) {
+        if (mDragState != IDLE || positions == null || mAdapterWrapper == null) {
+            return;
+        }
+
+        int[] which = new int[positions.length];
+        System.arraycopy(positions, 0, which, 0, positions.length);
+        Arrays.sort(which);
+
+        final int count = getInputAdapter().getCount();
+        int n = 0;
+        for (int i = 0; i < which.length; ++i) {
+            final int w = which[i];
+            if (w >= 0 && w < count && (n == 0 || which[n - 1] != w)) {
+                which[n++] = w;
+            }
+        }
+        if (n == 0) {
+            return;
+        }
+        if (n < which.length) {
+            int[] trimmed = new int[n];
+            System.arraycopy(which, 0, trimmed, 0, n);
+            which = trimmed;
+        }
+
+        mDragState = REMOVING;
+
+        cancelListViewTouch();
+
+        if (mBatchRemoveAnimator != null && mBatchDepth == 0) {
+            mBatchRemoveAnimator.start(which);
+        } else {
+            doRemoveItems(which);
+        }
+    }
+
+    /**
+     * Stops ListView from handling a touch gesture in progress, as
+     * the items under it are about to go away.
+     */
+    private void cancelListViewTouch() {
+        if (mInTouchEvent) {
+            switch (mCancelMethod) {
+                case ON_TOUCH_EVENT:
+                    super.onTouchEvent(mCancelEvent);
+                    break;
+                case ON_INTERCEPT_TOUCH_EVENT:
+                    super.onInterceptTouchEvent(mCancelEvent);
+                    break;
+            }
+        }
+    }
+
+    /**
+     * True while DSLV is calling out to its DropListener or
+     * RemoveListener. Data set changes seen meanwhile only moved or
+     * removed items; they did not change item contents.
+     */
+    boolean isReordering() {
+        return mReordering;
+    }
+
     /**
      * Move an item, bypassing the drag-sort process. Simply calls
      * through to {@link DropListener#drop(int, int)}.
@@ -1460,11 +2603,284 @@ public class DragSortListView extends ListView {
         if (mDropListener != null) {
             final int count = getInputAdapter().getCount();
             if (from >= 0 && from < count && to >= 0 && to < count) {
-                mDropListener.drop(from, to);
+                mReordering = true;
+                try {
+                    mDropListener.drop(from, to);
+                } finally {
+                    mReordering = false;
+                }
             }
         }
     }
 
+    /**
+     * Reorders the whole list and animates onscreen items from their
+     * old to their new locations. The reordering is done by as few
+     * calls to {@link DropListener#drop(int, int)} as possible: the
+     * items in a longest increasing subsequence of
+     * <code>permutation</code> stay put, and every other item is
+     * moved once. The drops are made in a batch (see
+     * {@link #beginBatch()}), so the list is laid out once; items
+     * are then slid into place by drawing them at decreasing
+     * offsets, without further layout. The DropListener must update
+     * the adapter before returning. Does nothing during a drag.
+     *
+     * @param permutation New order of the items:
+     * <code>permutation[i]</code> is the current position of the item
+     * that ends up at position <code>i</code> (NOTE: headers/footers
+     * ignored! these are positions in your input ListAdapter). Must
+     * contain each current position exactly once.
+     */
+    public void animateToOrder(int[] permutation) {
+        if (mDragState != IDLE || mDropListener == null || mAdapterWrapper == null) {
+            return;
+        }
+
+        final int n = permutation.length;
+        if (n != getInputAdapter().getCount()) {
+            return;
+        }
+        boolean[] seen = new boolean[n];
+        for (int i = 0; i < n; ++i) {
+            final int old = permutation[i];
+            if (old < 0 || old >= n || seen[old]) {
+                return;
+            }
+            seen[old] = true;
+        }
+
+        if (mOrderAnimator != null) {
+            mOrderAnimator.finish();
+        }
+
+        // Items in the longest increasing subsequence keep their
+        // relative order and are not moved. Patience sorting.
+        int[] tailIndex = new int[n];
+        int[] prevIndex = new int[n];
+        int length = 0;
+        for (int i = 0; i < n; ++i) {
+            int low = 0;
+            int high = length;
+            while (low < high) {
+                final int mid = (low + high) >>> 1;
+                if (permutation[tailIndex[mid]] < permutation[i]) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            prevIndex[i] = low > 0 ? tailIndex[low - 1] : -1;
+            tailIndex[low] = i;
+            if (low == length) {
+                length++;
+            }
+        }
+        boolean[] stays = seen;
+        Arrays.fill(stays, false);
+        for (int i = length > 0 ? tailIndex[length - 1] : -1; i >= 0; i = prevIndex[i]) {
+            stays[i] = true;
+        }
+
+        if (length == n) {
+            // already in order
+            return;
+        }
+
+        // Each moved item goes directly after the item that precedes
+        // it in the new order, taken in new order. Lay out slots for
+        // the whole process: every item has its original slot, and a
+        // moved item gets a slot after the last staying item before
+        // it in the new order (or at the front). A Fenwick tree over
+        // occupied slots gives current positions in O(log n).
+        int[] groupSize = new int[n + 1];
+        int lastStay = -1;
+        for (int i = 0; i < n; ++i) {
+            if (stays[i]) {
+                lastStay = permutation[i];
+            } else {
+                groupSize[lastStay + 1]++;
+            }
+        }
+        int[] groupStart = new int[n + 1];
+        int slot = 0;
+        for (int g = 0; g <= n; ++g) {
+            groupStart[g] = slot;
+            // original slot of item g - 1 comes first in its group
+            slot += (g > 0 ? 1 : 0) + groupSize[g];
+        }
+        final int slotCount = slot;
+
+        int[] tree = new int[slotCount + 1];
+        for (int old = 0; old < n; ++old) {
+            fenwickAdd(tree, groupStart[old + 1], 1);
+        }
+
+        recordOrderTops();
+
+        boolean moved = false;
+        mReordering = true;
+        beginBatch();
+        try {
+            int[] groupUsed = groupSize;
+            Arrays.fill(groupUsed, 0);
+            lastStay = -1;
+            for (int i = 0; i < n; ++i) {
+                final int old = permutation[i];
+                if (stays[i]) {
+                    lastStay = old;
+                    continue;
+                }
+
+                final int g = lastStay + 1;
+                final int from = fenwickSum(tree, groupStart[old + 1]);
+                fenwickAdd(tree, groupStart[old + 1], -1);
+                final int newSlot = groupStart[g] + (g > 0 ? 1 : 0) + groupUsed[g]++;
+                final int to = fenwickSum(tree, newSlot);
+                fenwickAdd(tree, newSlot, 1);
+
+                if (from != to) {
+                    mDropListener.drop(from, to);
+                    moved = true;
+                }
+            }
+        } finally {
+            endBatch();
+            mReordering = false;
+        }
+
+        if (mOrderAnimator != null && moved) {
+            // offsets are taken in the layout pass that the drops'
+            // notification requested
+            mOrderAnimator.startAfterLayout(permutation.clone());
+        }
+    }
+
+    /**
+     * Onscreen item tops saved by {@link #recordOrderTops()}, by
+     * input ListAdapter position starting at mOrderTopsFirst.
+     */
+    private int[] mOrderTops = new int[0];
+    private int mOrderTopsFirst;
+    private int mOrderTopsCount;
+
+    private void recordOrderTops() {
+        final int numHeaders = getHeaderViewsCount();
+        final int first = getFirstVisiblePosition();
+        final int count = getChildCount();
+
+        if (mOrderTops.length < count) {
+            mOrderTops = new int[count];
+        }
+
+        mOrderTopsFirst = Math.max(0, first - numHeaders);
+        mOrderTopsCount = 0;
+        final int dataCount = getCount() - numHeaders - getFooterViewsCount();
+        for (int i = 0; i < count; ++i) {
+            final int position = first + i - numHeaders;
+            if (position < 0) {
+                // header
+                continue;
+            }
+            if (position >= dataCount) {
+                break;
+            }
+            mOrderTops[mOrderTopsCount++] = getChildAt(i).getTop();
+        }
+    }
+
+    /**
+     * Starts a batch of programmatic edits, such as calls to
+     * {@link #moveItem(int, int)}, {@link #removeItem(int)},
+     * {@link #moveCheckState(int, int)} and
+     * {@link #removeCheckState(int)}. Until the matching
+     * {@link #endBatch()}, layout requests and input adapter
+     * notifications are held back, and removals are not animated.
+     * The list is then laid out once for the whole batch. Batches
+     * may be nested; only the outermost {@link #endBatch()} applies
+     * the changes.
+     *
+     * <p>Call {@link #endBatch()} before returning to the event
+     * loop. If the list is laid out while a batch is still open,
+     * the held back notifications are delivered at that point (and
+     * a warning is logged), since ListView cannot lay out an adapter
+     * whose item count changed silently.
+     */
+    public void beginBatch() {
+        mBatchDepth++;
+    }
+
+    /**
+     * Ends a batch started by {@link #beginBatch()}. The ListView
+     * is notified of any adapter changes made during the batch and
+     * is laid out once.
+     */
+    public void endBatch() {
+        if (mBatchDepth == 0) {
+            return;
+        }
+
+        mBatchDepth--;
+        if (mBatchDepth > 0) {
+            return;
+        }
+
+        final boolean layout = mBatchLayoutRequested;
+        mBatchLayoutRequested = false;
+
+        if (!flushBatchNotifications() && layout) {
+            // a notification requests its own layout
+            requestLayout();
+        }
+        applyBatchFirstShift();
+    }
+
+    /**
+     * Delivers the adapter notifications held back by the current
+     * batch.
+     *
+     * @return True if a notification was delivered.
+     */
+    private boolean flushBatchNotifications() {
+        final boolean invalidated = mBatchDataInvalidated;
+        final boolean changed = mBatchDataChanged;
+        final boolean reordering = !mBatchContentChanged;
+        mBatchDataInvalidated = false;
+        mBatchDataChanged = false;
+        mBatchContentChanged = false;
+
+        if (mAdapterWrapper == null || !(invalidated || changed)) {
+            return false;
+        }
+
+        // if every held back notification came from a reordering
+        // callback, observers may keep their item caches
+        final boolean wasReordering = mReordering;
+        mReordering = reordering;
+        try {
+            if (invalidated) {
+                mAdapterWrapper.notifyDataSetInvalidated();
+            } else {
+                mAdapterWrapper.notifyDataSetChanged();
+            }
+        } finally {
+            mReordering = wasReordering;
+        }
+        return true;
+    }
+
+    /**
+     * Runs <code>edits</code> between {@link #beginBatch()} and
+     * {@link #endBatch()}.
+     */
+    public void batch(Runnable edits) {
+        beginBatch();
+        try {
+            edits.run();
+        } finally {
+            endBatch();
+        }
+    }
+
     /**
      * Cancel a drag. Calls {@link #stopDrag(boolean, boolean)} with
      * <code>true</code> as the first argument.
@@ -1473,6 +2889,7 @@ public class DragSortListView extends ListView {
         if (mDragState == DRAGGING) {
             mDragScroller.stopScrolling(true);
             destroyFloatView();
+            clearShuffle();
             clearPositions();
             adjustAllItems();
 
@@ -1498,12 +2915,21 @@ public class DragSortListView extends ListView {
 
         if (mDropListener != null && mFloatPos >= 0 && mFloatPos < getCount()) {
             final int numHeaders = getHeaderViewsCount();
-            mDropListener.drop(mSrcPos - numHeaders, mFloatPos - numHeaders);
+            mReordering = true;
+            try {
+                mDropListener.drop(mSrcPos - numHeaders, mFloatPos - numHeaders);
+            } finally {
+                mReordering = false;
+            }
         }
 
         destroyFloatView();
 
-        adjustOnReorder();
+        if (mShuffleTranslating) {
+            commitDroppedShuffle();
+        } else {
+            adjustOnReorder();
+        }
         clearPositions();
         adjustAllItems();
 
@@ -1529,7 +2955,12 @@ public class DragSortListView extends ListView {
 
         // end it
         if (mRemoveListener != null) {
-            mRemoveListener.remove(which);
+            mReordering = true;
+            try {
+                mRemoveListener.remove(which);
+            } finally {
+                mReordering = false;
+            }
         }
 
         destroyFloatView();
@@ -1545,19 +2976,106 @@ public class DragSortListView extends ListView {
         }
     }
 
+    /**
+     * Removes items given by {@link #removeItems(int[])}. Calls
+     * RemoveListener.
+     *
+     * @param which Sorted positions in the input ListAdapter.
+     */
+    private void doRemoveItems(int[] which) {
+        mDragState = REMOVING;
+
+        // items removed above the first onscreen item shift it up
+        final int firstPos = getFirstVisiblePosition() - mBatchFirstShift;
+        final int numHeaders = getHeaderViewsCount();
+        int above = 0;
+        while (above < which.length && which[above] + numHeaders < firstPos) {
+            above++;
+        }
+
+        if (mRemoveListener != null) {
+            mReordering = true;
+            try {
+                if (mRemoveListener instanceof BatchRemoveListener) {
+                    ((BatchRemoveListener) mRemoveListener).remove(which);
+                } else {
+                    beginBatch();
+                    try {
+                        for (int i = which.length - 1; i >= 0; --i) {
+                            mRemoveListener.remove(which[i]);
+                        }
+                    } finally {
+                        endBatch();
+                    }
+                }
+            } finally {
+                mReordering = false;
+            }
+        }
+
+        shiftFirstVisible(above);
+
+        // restore the collapsed items in case the listener kept them
+        clearPositions();
+        adjustAllItems();
+
+        if (mInTouchEvent) {
+            mDragState = STOPPED;
+        } else {
+            mDragState = IDLE;
+        }
+    }
+
     private void adjustOnReorder() {
-        final int firstPos = getFirstVisiblePosition();
+        final int firstPos = getFirstVisiblePosition() - mBatchFirstShift;
         // Log.d("mobeta", "first="+firstPos+" src="+mSrcPos);
         if (mSrcPos < firstPos) {
             // collapsed src item is off screen;
             // adjust the scroll after item heights have been fixed
-            View v = getChildAt(0);
-            int top = 0;
-            if (v != null) {
-                top = v.getTop();
+            shiftFirstVisible(1);
+        }
+    }
+
+    /**
+     * Keeps the first onscreen item in place after
+     * <code>removed</code> items above it were removed from the
+     * adapter. During a batch, the ListView has not been notified
+     * yet and would drop the correction when it is; the shift is
+     * then accumulated and applied by {@link #applyBatchFirstShift()}.
+     */
+    private void shiftFirstVisible(int removed) {
+        if (removed <= 0) {
+            return;
+        }
+
+        if (mBatchDepth > 0) {
+            if (mBatchFirstShift == 0) {
+                View v = getChildAt(0);
+                mBatchFirstTop = v != null ? v.getTop() : 0;
             }
-            // Log.d("mobeta", "top="+top+" fvh="+mFloatViewHeight);
-            setSelectionFromTop(firstPos - 1, top - getPaddingTop());
+            mBatchFirstShift += removed;
+            return;
+        }
+
+        View v = getChildAt(0);
+        int top = 0;
+        if (v != null) {
+            top = v.getTop();
+        }
+        // Log.d("mobeta", "top="+top+" fvh="+mFloatViewHeight);
+        setSelectionFromTop(getFirstVisiblePosition() - removed, top - getPaddingTop());
+    }
+
+    /**
+     * Applies the scroll correction accumulated during a batch.
+     * Must follow the delivery of the batch's notifications, which
+     * makes the ListView forget any earlier selection.
+     */
+    private void applyBatchFirstShift() {
+        if (mBatchFirstShift > 0) {
+            final int pos = getFirstVisiblePosition() - mBatchFirstShift;
+            mBatchFirstShift = 0;
+            setSelectionFromTop(Math.max(0, pos), mBatchFirstTop - getPaddingTop());
         }
     }
 
@@ -1669,6 +3187,9 @@ public class DragSortListView extends ListView {
         mCurrFloatAlpha = mFloatAlpha;
         mListViewIntercepted = false;
         mChildHeightCache.clear();
+        if (mAdapterWrapper != null) {
+            mAdapterWrapper.clearPrefetched();
+        }
     }
 
     private void saveTouchCoords(MotionEvent ev) {
@@ -1787,11 +3308,25 @@ public class DragSortListView extends ListView {
     }
 
     private void continueDrag(int x, int y) {
+        continueDrag(x, y, mLastY);
+    }
+
+    /**
+     * @param lastY Previous touch y; determines the direction of
+     * motion when deciding whether to start a drag-scroll.
+     */
+    private void continueDrag(int x, int y, int lastY) {
 
         // proposed position
         mFloatLoc.x = x - mDragDeltaX;
         mFloatLoc.y = y - mDragDeltaY;
 
+        if (mDragScrubber.scrub(x, y)) {
+            // list jumps with the scrubber; no drag-scroll
+            doDragFloatView(true);
+            return;
+        }
+
         doDragFloatView(true);
 
         int minY = Math.min(y, mFloatViewMid + mFloatViewHeightHalf);
@@ -1800,7 +3335,7 @@ public class DragSortListView extends ListView {
         // get the current scroll direction
         int currentScrollDir = mDragScroller.getScrollDir();
 
-        if (minY > mLastY && minY > mDownScrollStartY && currentScrollDir != DragScroller.DOWN) {
+        if (minY > lastY && minY > mDownScrollStartY && currentScrollDir != DragScroller.DOWN) {
             // dragged down, it is below the down scroll start and it is not
             // scrolling up
 
@@ -1811,7 +3346,7 @@ public class DragSortListView extends ListView {
 
             // start scrolling down
             mDragScroller.startScrolling(DragScroller.DOWN);
-        } else if (maxY < mLastY && maxY < mUpScrollStartY && currentScrollDir != DragScroller.UP) {
+        } else if (maxY < lastY && maxY < mUpScrollStartY && currentScrollDir != DragScroller.UP) {
             // dragged up, it is above the up scroll start and it is not
             // scrolling up
 
@@ -1868,6 +3403,28 @@ public class DragSortListView extends ListView {
         }
     }
 
+    /**
+     * Adjusts only the items whose slot state can have changed since
+     * the expanded positions were <code>oldFirstExpPos</code> and
+     * <code>oldSecondExpPos</code>: the old and new expanded items.
+     * Every other onscreen item is already at its natural height
+     * (the source item included, unless it is one of the above), so
+     * the cost does not grow with the number of onscreen items.
+     */
+    private void adjustChangedItems(int oldFirstExpPos, int oldSecondExpPos) {
+        adjustItem(oldFirstExpPos);
+        if (oldSecondExpPos != oldFirstExpPos) {
+            adjustItem(oldSecondExpPos);
+        }
+        if (mFirstExpPos != oldFirstExpPos && mFirstExpPos != oldSecondExpPos) {
+            adjustItem(mFirstExpPos);
+        }
+        if (mSecondExpPos != mFirstExpPos && mSecondExpPos != oldFirstExpPos
+                && mSecondExpPos != oldSecondExpPos) {
+            adjustItem(mSecondExpPos);
+        }
+    }
+
     private void adjustItem(int position) {
         View v = getChildAt(position - getFirstVisiblePosition());
 
@@ -1885,7 +3442,9 @@ public class DragSortListView extends ListView {
         // Adjust item height
         ViewGroup.LayoutParams lp = v.getLayoutParams();
         int height;
-        if (position != mSrcPos && position != mFirstExpPos && position != mSecondExpPos) {
+        if (mShuffleTranslating
+                || (position != mSrcPos && position != mFirstExpPos && position != mSecondExpPos)) {
+            // item layout is frozen while translation shuffling
             height = ViewGroup.LayoutParams.WRAP_CONTENT;
         } else {
             height = calcItemHeight(position, v, invalidChildHeight);
@@ -1897,7 +3456,7 @@ public class DragSortListView extends ListView {
         }
 
         // Adjust item gravity
-        if (position == mFirstExpPos || position == mSecondExpPos) {
+        if (!mShuffleTranslating && (position == mFirstExpPos || position == mSecondExpPos)) {
             if (position < mSrcPos) {
                 ((DragSortItemView) v).setGravity(Gravity.BOTTOM);
             } else if (position > mSrcPos) {
@@ -1939,6 +3498,16 @@ public class DragSortListView extends ListView {
                 return childHeight;
             }
 
+            final int numHeaders = getHeaderViewsCount();
+            if (mAdapterWrapper != null && position >= numHeaders) {
+                v = mAdapterWrapper.getPrefetched(position - numHeaders);
+                if (v != null) {
+                    childHeight = getChildHeight(position, v, true);
+                    mChildHeightCache.add(position, childHeight);
+                    return childHeight;
+                }
+            }
+
             final ListAdapter adapter = getAdapter();
             int type = adapter.getItemViewType(position);
 
@@ -2045,7 +3614,13 @@ public class DragSortListView extends ListView {
 
     @Override
     public void requestLayout() {
-        if (!mBlockLayoutRequests) {
+        if (mBlockLayoutRequests) {
+            return;
+        }
+
+        if (mBatchDepth > 0) {
+            mBatchLayoutRequested = true;
+        } else {
             super.requestLayout();
         }
     }
@@ -2093,6 +3668,15 @@ public class DragSortListView extends ListView {
         return adjust;
     }
 
+    /**
+     * Measures a floating View ahead of a call to
+     * {@link #startDrag(int, View, int, int, int)}, so that the drag
+     * can start without a measure pass.
+     */
+    void prepareFloatView(View floatView) {
+        measureItem(floatView);
+    }
+
     private void measureItem(View item) {
         ViewGroup.LayoutParams lp = item.getLayoutParams();
         if (lp == null) {
@@ -2122,7 +3706,8 @@ public class DragSortListView extends ListView {
     protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
         super.onMeasure(widthMeasureSpec, heightMeasureSpec);
         // Log.d("mobeta", "onMeasure called");
-        if (mFloatView != null) {
+        // a float window measures and lays out its own View
+        if (mFloatView != null && !mFloatInWindow) {
             if (mFloatView.isLayoutRequested()) {
                 measureFloatView();
             }
@@ -2133,9 +3718,18 @@ public class DragSortListView extends ListView {
 
     @Override
     protected void layoutChildren() {
+        if (mBatchDepth > 0 && (mBatchDataChanged || mBatchDataInvalidated)) {
+            // ListView throws if the adapter count changed without a
+            // notification, so a batch left open across a layout
+            // pass has to give its notifications up early
+            Log.w("mobeta", "layout during an open batch; call endBatch() first");
+            flushBatchNotifications();
+            applyBatchFirstShift();
+        }
+
         super.layoutChildren();
 
-        if (mFloatView != null) {
+        if (mFloatView != null && !mFloatInWindow) {
             if (mFloatView.isLayoutRequested() && !mFloatViewOnMeasured) {
                 // Have to measure here when usual android measure
                 // pass is skipped. This happens during a drag-sort
@@ -2145,6 +3739,170 @@ public class DragSortListView extends ListView {
             mFloatView.layout(0, 0, mFloatView.getMeasuredWidth(), mFloatView.getMeasuredHeight());
             mFloatViewOnMeasured = false;
         }
+
+        if (mShuffleTranslating) {
+            layoutShuffle();
+        }
+
+        if (mOrderAnimator != null) {
+            mOrderAnimator.onLayout();
+        }
+    }
+
+    /**
+     * Computes the draw offsets of onscreen items while translation
+     * shuffling. Items are drawn where they would be laid out in
+     * SHUFFLE_RELAYOUT mode given the current expanded positions;
+     * the real ListView layout is left alone.
+     */
+    private void layoutShuffle() {
+        final int count = getChildCount();
+        if (count == 0) {
+            return;
+        }
+
+        if (mShuffleTops.length < count) {
+            mShuffleTops = new int[count];
+            mShuffleBottoms = new int[count];
+        }
+
+        final int first = getFirstVisiblePosition();
+        final int divHeight = getDividerHeight();
+
+        // A shuffle conserves total item height (the collapse at the
+        // source position is matched by the expansion at the drop
+        // slot), so items on the far side of the drop slot keep their
+        // laid out positions. Stack the rest from there.
+        if (mSecondExpPos > mSrcPos) {
+            int bottom = getChildAt(count - 1).getBottom();
+            for (int i = count - 1; i >= 0; --i) {
+                mShuffleBottoms[i] = bottom;
+                bottom -= calcItemHeight(first + i, getChildAt(i), false);
+                mShuffleTops[i] = bottom;
+                bottom -= divHeight;
+            }
+        } else {
+            int top = getChildAt(0).getTop();
+            for (int i = 0; i < count; ++i) {
+                mShuffleTops[i] = top;
+                top += calcItemHeight(first + i, getChildAt(i), false);
+                mShuffleBottoms[i] = top;
+                top += divHeight;
+            }
+        }
+
+        for (int i = 0; i < count; ++i) {
+            final View v = getChildAt(i);
+            // headers and footers are not wrapped
+            if (v instanceof DragSortItemView) {
+                final int position = first + i;
+                final DragSortItemView item = (DragSortItemView) v;
+                final View child = item.getChildAt(0);
+                if (child != null) {
+                    int childTop = mShuffleTops[i];
+                    if (position < mSrcPos
+                            && (position == mFirstExpPos || position == mSecondExpPos)) {
+                        // blank space sits above the child
+                        childTop = mShuffleBottoms[i] - child.getHeight();
+                    }
+                    item.setShuffleOffset(childTop - v.getTop() - child.getTop());
+                }
+            }
+        }
+    }
+
+    /**
+     * Stops translation shuffling and draws all items at their
+     * laid out locations again.
+     */
+    private void clearShuffle() {
+        if (mShuffleTranslating) {
+            mShuffleTranslating = false;
+            clearItemOffsets();
+        }
+    }
+
+    private void clearItemOffsets() {
+        final int count = getChildCount();
+        for (int i = 0; i < count; ++i) {
+            final View v = getChildAt(i);
+            if (v instanceof DragSortItemView) {
+                ((DragSortItemView) v).setShuffleOffset(0);
+            }
+        }
+        invalidate();
+    }
+
+    /**
+     * Stops translation shuffling after a drop, keeping the items
+     * where they were drawn. The drawn layout already shows the
+     * items in their new order, but the laid out one was never
+     * changed: its first item may sit a float height away from
+     * where it was drawn, and a source item above the first
+     * onscreen one has been removed from above it.
+     */
+    private void commitDroppedShuffle() {
+        if (!mShuffleTranslating || getChildCount() == 0) {
+            clearShuffle();
+            return;
+        }
+
+        final int first = getFirstVisiblePosition();
+        int pos;
+        int top;
+        if (mSrcPos == first && getChildCount() > 1) {
+            // the collapsed source slot is gone; the next item
+            // takes its position
+            pos = first;
+            top = mShuffleTops[1];
+        } else {
+            pos = mSrcPos < first ? first - 1 : first;
+            top = mShuffleTops[0];
+        }
+
+        clearShuffle();
+
+        setSelectionFromTop(pos, top - getPaddingTop());
+    }
+
+    /**
+     * Stops translation shuffling, laying out items as they are
+     * currently drawn. Does nothing if not translation shuffling.
+     */
+    private void commitShuffleLayout() {
+        if (!mShuffleTranslating || getChildCount() == 0) {
+            clearShuffle();
+            return;
+        }
+
+        final int first = getFirstVisiblePosition();
+        final int top = mShuffleTops[0];
+
+        clearShuffle();
+
+        mBlockLayoutRequests = true;
+        adjustAllItems();
+        setSelectionFromTop(first, top - getPaddingTop());
+        layoutChildren();
+        mBlockLayoutRequests = false;
+    }
+
+    @Override
+    protected boolean drawChild(Canvas canvas, View child, long drawingTime) {
+        int offset = 0;
+        if (child instanceof DragSortItemView) {
+            offset = ((DragSortItemView) child).getShuffleOffset();
+        }
+
+        if (offset == 0) {
+            return super.drawChild(canvas, child, drawingTime);
+        }
+
+        canvas.save();
+        canvas.translate(0, offset);
+        boolean more = super.drawChild(canvas, child, drawingTime);
+        canvas.restore();
+        return more;
     }
 
     protected boolean onDragTouchEvent(MotionEvent ev) {
@@ -2153,6 +3911,7 @@ public class DragSortListView extends ListView {
 
         switch (ev.getAction() & MotionEvent.ACTION_MASK) {
             case MotionEvent.ACTION_CANCEL:
+                cancelDragMove();
                 if (mDragState == DRAGGING) {
                     cancelDrag();
                 }
@@ -2160,23 +3919,164 @@ public class DragSortListView extends ListView {
                 break;
             case MotionEvent.ACTION_UP:
                 // Log.d("mobeta", "calling stopDrag from onDragTouchEvent");
+                // drop at the latest touch location
+                flushDragMove();
                 if (mDragState == DRAGGING) {
                     stopDrag(false);
                 }
                 doActionUpOrCancel();
                 break;
             case MotionEvent.ACTION_MOVE:
-                continueDrag((int) ev.getX(), (int) ev.getY());
+                if (mCoalesceDragMoves) {
+                    queueDragMove(ev);
+                } else {
+                    continueDrag((int) ev.getX(), (int) ev.getY());
+                }
                 break;
         }
 
         return true;
     }
 
-    private boolean mFloatViewInvalidated = false;
+    /**
+     * Records the location of a drag move to be processed on the
+     * next frame, and updates the touch velocity estimate.
+     */
+    private void queueDragMove(MotionEvent ev) {
+        final int y = (int) ev.getY();
+        final long time = ev.getEventTime();
+
+        // The samples batched into this event give the most recent
+        // velocity; fall back to the previous event if there are none.
+        final int history = ev.getHistorySize();
+        if (history > 0) {
+            final long dt = time - ev.getHistoricalEventTime(0);
+            if (dt > 0) {
+                mDragVelocityY = (ev.getY() - ev.getHistoricalY(0)) / dt;
+            }
+        } else if (mLastMoveTime != 0) {
+            final long dt = time - mLastMoveTime;
+            if (dt > 0) {
+                mDragVelocityY = ((float) (y - mLastMoveY)) / dt;
+            }
+        }
+        // per move, not per frame, so that several moves within one
+        // frame do not add up to one large step
+        mLastMoveTime = time;
+        mLastMoveY = y;
+
+        mPendingMoveX = (int) ev.getX();
+        mPendingMoveY = y;
+
+        if (!mDragMovePending) {
+            mDragMovePending = true;
+            mFrameScheduler.postFrameCallback(FrameScheduler.CALLBACK_INPUT, mDragMoveCallback);
+        }
+    }
+
+    /**
+     * Processes a recorded drag move now, if there is one.
+     */
+    private void flushDragMove() {
+        if (mDragMovePending) {
+            mDragMovePending = false;
+            mFrameScheduler.removeFrameCallback(FrameScheduler.CALLBACK_INPUT, mDragMoveCallback);
+
+            if (mDragState == DRAGGING) {
+                // Compare against where the touch was one frame ago
+                // according to the velocity estimate.
+                final float frameMs = mFrameScheduler.getFrameIntervalNanos() / 1000000f;
+                final int lastY = mPendingMoveY - Math.round(mDragVelocityY * frameMs);
+                continueDrag(mPendingMoveX, mPendingMoveY, lastY);
+            }
+        }
+    }
+
+    private void cancelDragMove() {
+        if (mDragMovePending) {
+            mDragMovePending = false;
+            mFrameScheduler.removeFrameCallback(FrameScheduler.CALLBACK_INPUT, mDragMoveCallback);
+        }
+    }
+
+    /**
+     * An ImageView floating View is faded with
+     * {@link ImageView#setAlpha(int)}; true if that alpha needs
+     * resetting.
+     */
+    private boolean mFloatAlphaSet = false;
+
+    /**
+     * Bounds of the floating View when last drawn.
+     */
+    private Rect mFloatDrawnRect = new Rect();
+
+    private Rect mFloatDirtyRect = new Rect();
+
+    /**
+     * Item bounds saved by {@link #recordItemBounds()}.
+     */
+    private int[] mRecordedTops = new int[0];
+    private int[] mRecordedBottoms = new int[0];
+    private int mRecordedFirst;
+    private int mRecordedCount;
 
+    private Rect mItemDirtyRect = new Rect();
+
+    /**
+     * Invalidates the area the floating View was last drawn in and
+     * the area it now occupies.
+     */
     private void invalidateFloatView() {
-        mFloatViewInvalidated = true;
+        if (mFloatView == null) {
+            return;
+        }
+
+        if (mFloatInWindow) {
+            updateFloatWindow();
+            return;
+        }
+
+        mFloatDirtyRect.set(mFloatLoc.x, mFloatLoc.y,
+                mFloatLoc.x + mFloatView.getWidth(), mFloatLoc.y + mFloatView.getHeight());
+        mFloatDirtyRect.union(mFloatDrawnRect);
+        invalidate(mFloatDirtyRect);
+    }
+
+    /**
+     * Animation-phase counterpart of {@link #doDragFloatView(boolean)}.
+     * The drop slot is frozen while the floating View animates
+     * to its final location, so only the floating View needs
+     * redrawing. The FloatViewManager still sees every move. Items still follow the floating View if it
+     * is mid-slide.
+     */
+    private void moveFloatView() {
+        if (mAnimate && mFirstExpPos != mSecondExpPos) {
+            doDragFloatView(true);
+        } else {
+            updateFloatView();
+            invalidateFloatView();
+        }
+    }
+
+    /**
+     * Sets the height of an animating child without a layout
+     * request. Follow with {@link #layoutResizedChildren()} once
+     * every child is resized; only this ListView needs to lay out
+     * again.
+     */
+    private void resizeChild(View child, int height) {
+        ViewGroup.LayoutParams lp = child.getLayoutParams();
+        lp.height = height;
+        mBlockLayoutRequests = true;
+        child.setLayoutParams(lp);
+        mBlockLayoutRequests = false;
+    }
+
+    private void layoutResizedChildren() {
+        mBlockLayoutRequests = true;
+        layoutChildren();
+        mBlockLayoutRequests = false;
     }
 
     /**
@@ -2245,98 +4145,342 @@ public class DragSortListView extends ListView {
             return false;
         }
 
-        if (getParent() != null) {
-            getParent().requestDisallowInterceptTouchEvent(true);
+        if (mOrderAnimator != null) {
+            mOrderAnimator.finish();
+        }
+
+        if (getParent() != null) {
+            getParent().requestDisallowInterceptTouchEvent(true);
+        }
+
+        int pos = position + getHeaderViewsCount();
+        mFirstExpPos = pos;
+        mSecondExpPos = pos;
+        mSrcPos = pos;
+        mFloatPos = pos;
+
+        // mDragState = dragType;
+        mDragState = DRAGGING;
+        mDragFlags = 0;
+        mDragFlags |= dragFlags;
+
+        mFloatView = floatView;
+        measureFloatView(); // sets mFloatViewHeight
+
+        mShuffleTranslating = mShuffleMode == SHUFFLE_TRANSLATE;
+        if (mShuffleTranslating) {
+            layoutShuffle();
+        }
+
+        mDragScrubber.start(mX);
+
+        mDragDeltaX = deltaX;
+        mDragDeltaY = deltaY;
+        mDragStartY = mY;
+
+        // no velocity until the first queued move
+        mLastMoveTime = 0;
+        mDragVelocityY = 0;
+
+        // updateFloatView(mX - mDragDeltaX, mY - mDragDeltaY);
+        mFloatLoc.x = mX - mDragDeltaX;
+        mFloatLoc.y = mY - mDragDeltaY;
+
+        if (mFloatRenderMode == FLOAT_RENDER_WINDOW) {
+            attachFloatWindow();
+        }
+
+        // set src item invisible
+        final View srcItem = getChildAt(mSrcPos - getFirstVisiblePosition());
+
+        if (srcItem != null) {
+            srcItem.setVisibility(View.INVISIBLE);
+        }
+
+        if (mTrackDragSort) {
+            mDragSortTracker.startTracking();
+        }
+
+        // once float view is created, events are no longer passed
+        // to ListView
+        switch (mCancelMethod) {
+            case ON_TOUCH_EVENT:
+                super.onTouchEvent(mCancelEvent);
+                break;
+            case ON_INTERCEPT_TOUCH_EVENT:
+                super.onInterceptTouchEvent(mCancelEvent);
+                break;
+        }
+
+        requestLayout();
+
+        if (mLiftAnimator != null) {
+            mLiftAnimator.start();
+        }
+
+        return true;
+    }
+
+    private void doDragFloatView(boolean forceInvalidate) {
+        int movePos = getFirstVisiblePosition() + getChildCount() / 2;
+        View moveItem = getChildAt(getChildCount() / 2);
+
+        if (moveItem == null) {
+            return;
+        }
+
+        doDragFloatView(movePos, moveItem, forceInvalidate);
+    }
+
+    private void doDragFloatView(int movePos, View moveItem, boolean forceInvalidate) {
+        mBlockLayoutRequests = true;
+
+        updateFloatView();
+
+        int oldFirstExpPos = mFirstExpPos;
+        int oldSecondExpPos = mSecondExpPos;
+
+        boolean updated = updatePositions();
+
+        if (updated) {
+            recordItemBounds();
+
+            if (mShuffleTranslating) {
+                layoutShuffle();
+            } else {
+                adjustChangedItems(oldFirstExpPos, oldSecondExpPos);
+                int scroll = adjustScroll(movePos, moveItem, oldFirstExpPos, oldSecondExpPos);
+                // Log.d("mobeta", "  adjust scroll="+scroll);
+
+                setSelectionFromTop(movePos, moveItem.getTop() + scroll - getPaddingTop());
+                layoutChildren();
+            }
+        }
+
+        if (updated) {
+            invalidateItemChanges(oldFirstExpPos, oldSecondExpPos);
+        }
+
+        if (mFloatInWindow) {
+            // the list only changes with the drop slot
+            updateFloatWindow();
+        } else if (updated || forceInvalidate) {
+            invalidateFloatView();
+        }
+
+        mBlockLayoutRequests = false;
+    }
+
+    /**
+     * Moves the drop slot straight to <code>position</code> and
+     * scrolls the list so that the slot lies under the floating
+     * View. Items in between are never visited, so a jump across
+     * the whole list costs a single layout. The next
+     * {@link #updatePositions()} starts from the new slot.
+     */
+    private void jumpToPosition(int position) {
+        if (position != mFloatPos) {
+            if (mDragListener != null) {
+                final int numHeaders = getHeaderViewsCount();
+                mDragListener.drag(mFloatPos - numHeaders, position - numHeaders);
+            }
+            mFloatPos = position;
+        }
+
+        final int oldFirstExpPos = mFirstExpPos;
+        final int oldSecondExpPos = mSecondExpPos;
+
+        mFirstExpPos = position;
+        mSecondExpPos = position;
+
+        // blank space is below the item when the slot is below the
+        // source position
+        int top = mFloatLoc.y;
+        if (position > mSrcPos) {
+            top -= getChildHeight(position) + getDividerHeight();
+        }
+
+        mBlockLayoutRequests = true;
+
+        // restore items left behind by the old slot; onscreen items
+        // are reused by layout without being rebound
+        adjustItem(oldFirstExpPos);
+        adjustItem(oldSecondExpPos);
+        adjustItem(position);
+
+        setSelectionFromTop(position, top - getPaddingTop());
+        layoutChildren();
+
+        mBlockLayoutRequests = false;
+
+        invalidate();
+    }
+
+    /**
+     * Saves the drawn bounds of onscreen items so that
+     * {@link #invalidateItemChanges(int, int)} can find the ones
+     * that moved.
+     */
+    private void recordItemBounds() {
+        final int first = getFirstVisiblePosition();
+        final int count = getChildCount();
+
+        if (mRecordedTops.length < count) {
+            mRecordedTops = new int[count];
+            mRecordedBottoms = new int[count];
         }
 
-        int pos = position + getHeaderViewsCount();
-        mFirstExpPos = pos;
-        mSecondExpPos = pos;
-        mSrcPos = pos;
-        mFloatPos = pos;
+        for (int i = 0; i < count; ++i) {
+            mRecordedTops[i] = getItemTop(first + i);
+            mRecordedBottoms[i] = getItemBottom(first + i);
+        }
 
-        // mDragState = dragType;
-        mDragState = DRAGGING;
-        mDragFlags = 0;
-        mDragFlags |= dragFlags;
+        mRecordedFirst = first;
+        mRecordedCount = count;
+    }
 
-        mFloatView = floatView;
-        measureFloatView(); // sets mFloatViewHeight
+    /**
+     * Invalidates the items that moved, were resized, or changed
+     * expanded state since {@link #recordItemBounds()}, along with
+     * the dividers drawn next to them.
+     */
+    private void invalidateItemChanges(int oldFirstExpPos, int oldSecondExpPos) {
+        final int first = getFirstVisiblePosition();
+        final int count = getChildCount();
 
-        mDragDeltaX = deltaX;
-        mDragDeltaY = deltaY;
-        mDragStartY = mY;
+        if (first != mRecordedFirst || count != mRecordedCount) {
+            // items came and went
+            invalidate();
+            return;
+        }
 
-        // updateFloatView(mX - mDragDeltaX, mY - mDragDeltaY);
-        mFloatLoc.x = mX - mDragDeltaX;
-        mFloatLoc.y = mY - mDragDeltaY;
+        final int divHeight = getDividerHeight();
+        final int width = getWidth();
+        mItemDirtyRect.setEmpty();
 
-        // set src item invisible
-        final View srcItem = getChildAt(mSrcPos - getFirstVisiblePosition());
+        for (int i = 0; i < count; ++i) {
+            final int position = first + i;
+            final int top = getItemTop(position);
+            final int bottom = getItemBottom(position);
 
-        if (srcItem != null) {
-            srcItem.setVisibility(View.INVISIBLE);
+            if (top != mRecordedTops[i] || bottom != mRecordedBottoms[i]
+                    || position == oldFirstExpPos || position == oldSecondExpPos
+                    || position == mFirstExpPos || position == mSecondExpPos) {
+                mItemDirtyRect.union(0, Math.min(top, mRecordedTops[i]) - divHeight,
+                        width, Math.max(bottom, mRecordedBottoms[i]) + divHeight);
+            }
         }
 
-        if (mTrackDragSort) {
-            mDragSortTracker.startTracking();
+        if (!mItemDirtyRect.isEmpty()) {
+            invalidate(mItemDirtyRect);
         }
+    }
 
-        // once float view is created, events are no longer passed
-        // to ListView
-        switch (mCancelMethod) {
-            case ON_TOUCH_EVENT:
-                super.onTouchEvent(mCancelEvent);
-                break;
-            case ON_INTERCEPT_TOUCH_EVENT:
-                super.onInterceptTouchEvent(mCancelEvent);
-                break;
+    /**
+     * Adds the floating View to a window of its own, positioned
+     * over the ListView.
+     */
+    private void attachFloatWindow() {
+        if (getWindowToken() == null || mFloatView.getParent() != null) {
+            // a View that already has a parent cannot be added to a
+            // window; draw it inline instead
+            return;
         }
 
-        requestLayout();
-
-        if (mLiftAnimator != null) {
-            mLiftAnimator.start();
+        if (mFloatWindowParams == null) {
+            mFloatWindowParams = new WindowManager.LayoutParams();
+            mFloatWindowParams.type = WindowManager.LayoutParams.TYPE_APPLICATION_PANEL;
+            mFloatWindowParams.gravity = Gravity.TOP | Gravity.LEFT;
+            mFloatWindowParams.flags = WindowManager.LayoutParams.FLAG_NOT_TOUCHABLE
+                    | WindowManager.LayoutParams.FLAG_NOT_FOCUSABLE
+                    | WindowManager.LayoutParams.FLAG_LAYOUT_IN_SCREEN
+                    | WindowManager.LayoutParams.FLAG_LAYOUT_NO_LIMITS;
+            mFloatWindowParams.format = PixelFormat.TRANSLUCENT;
+            mFloatWindowParams.windowAnimations = 0;
         }
 
-        return true;
-    }
+        mFloatWindowParams.token = getWindowToken();
+        mFloatWindowParams.width = mFloatView.getMeasuredWidth();
+        mFloatWindowParams.height = mFloatView.getMeasuredHeight();
+        setFloatWindowLocation();
 
-    private void doDragFloatView(boolean forceInvalidate) {
-        int movePos = getFirstVisiblePosition() + getChildCount() / 2;
-        View moveItem = getChildAt(getChildCount() / 2);
+        mFloatView.setVisibility(View.VISIBLE);
+        getWindowManager().addView(mFloatView, mFloatWindowParams);
+        mFloatInWindow = true;
+    }
 
-        if (moveItem == null) {
+    /**
+     * Moves and fades the floating View window to match the
+     * current float location.
+     */
+    private void updateFloatWindow() {
+        final long tick = System.nanoTime() / mFrameScheduler.getFrameIntervalNanos();
+        if (tick == mFloatWindowTick) {
+            // already moved this frame; catch up on the next one
+            mFrameScheduler.postFrameCallback(FrameScheduler.CALLBACK_ANIMATION,
+                    mFloatWindowCallback);
             return;
         }
 
-        doDragFloatView(movePos, moveItem, forceInvalidate);
-    }
+        final int oldX = mFloatWindowParams.x;
+        final int oldY = mFloatWindowParams.y;
+        final float oldAlpha = mFloatWindowParams.alpha;
 
-    private void doDragFloatView(int movePos, View moveItem, boolean forceInvalidate) {
-        mBlockLayoutRequests = true;
+        setFloatWindowLocation();
 
-        updateFloatView();
+        if (oldX != mFloatWindowParams.x || oldY != mFloatWindowParams.y
+                || oldAlpha != mFloatWindowParams.alpha) {
+            mFloatWindowTick = tick;
+            getWindowManager().updateViewLayout(mFloatView, mFloatWindowParams);
+        }
+    }
 
-        int oldFirstExpPos = mFirstExpPos;
-        int oldSecondExpPos = mSecondExpPos;
+    private void setFloatWindowLocation() {
+        getLocationOnScreen(mListScreenLoc);
+        mFloatWindowParams.x = mListScreenLoc[0] + mFloatLoc.x;
+        mFloatWindowParams.y = mListScreenLoc[1] + mFloatLoc.y;
+        mFloatWindowParams.alpha = getFloatViewAlpha();
+    }
 
-        boolean updated = updatePositions();
+    private void detachFloatWindow() {
+        if (mFloatInWindow) {
+            mFrameScheduler.removeFrameCallback(FrameScheduler.CALLBACK_ANIMATION,
+                    mFloatWindowCallback);
+            getWindowManager().removeViewImmediate(mFloatView);
+            mFloatInWindow = false;
+        }
+    }
 
-        if (updated) {
-            adjustAllItems();
-            int scroll = adjustScroll(movePos, moveItem, oldFirstExpPos, oldSecondExpPos);
-            // Log.d("mobeta", "  adjust scroll="+scroll);
+    @Override
+    public void setOnTouchListener(OnTouchListener l) {
+        if (mTouchListener != l && mTouchListener instanceof DragSortController) {
+            ((DragSortController) mTouchListener).detach();
+        }
+        mTouchListener = l;
+        super.setOnTouchListener(l);
+    }
+
+    private WindowManager getWindowManager() {
+        return (WindowManager) getContext().getSystemService(Context.WINDOW_SERVICE);
+    }
 
-            setSelectionFromTop(movePos, moveItem.getTop() + scroll - getPaddingTop());
-            layoutChildren();
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        // the float window cannot outlive ours
+        if (mFloatView != null) {
+            detachFloatWindow();
         }
 
-        if (updated || forceInvalidate) {
-            invalidate();
+        if (mTouchListener instanceof DragSortController) {
+            ((DragSortController) mTouchListener).detach();
         }
 
-        mBlockLayoutRequests = false;
+        // nothing may keep this View reachable from the main looper
+        mDragScroller.stopScrolling(true);
+        cancelDragMove();
+        mFrameScheduler.cancelAll();
+        mHeightPrefetcher.stop();
     }
 
     /**
@@ -2371,22 +4515,22 @@ public class DragSortListView extends ListView {
         // "nHead="+numHeaders+" nFoot="+numFooters+" first="+firstPos+" last="+lastPos);
         int topLimit = getPaddingTop();
         if (firstPos < numHeaders) {
-            topLimit = getChildAt(numHeaders - firstPos - 1).getBottom();
+            topLimit = getItemBottom(numHeaders - 1);
         }
         if ((mDragFlags & DRAG_NEG_Y) == 0) {
             if (firstPos <= mSrcPos) {
-                topLimit = Math.max(getChildAt(mSrcPos - firstPos).getTop(), topLimit);
+                topLimit = Math.max(getItemTop(mSrcPos), topLimit);
             }
         }
         // bottom limit is top of first footer View or
         // bottom of last item in list
         int bottomLimit = getHeight() - getPaddingBottom();
         if (lastPos >= getCount() - numFooters - 1) {
-            bottomLimit = getChildAt(getCount() - numFooters - 1 - firstPos).getBottom();
+            bottomLimit = getItemBottom(getCount() - numFooters - 1);
         }
         if ((mDragFlags & DRAG_POS_Y) == 0) {
             if (lastPos >= mSrcPos) {
-                bottomLimit = Math.min(getChildAt(mSrcPos - firstPos).getBottom(), bottomLimit);
+                bottomLimit = Math.min(getItemBottom(mSrcPos), bottomLimit);
             }
         }
 
@@ -2406,12 +4550,21 @@ public class DragSortListView extends ListView {
 
     private void destroyFloatView() {
         if (mFloatView != null) {
+            if (mFloatAlphaSet) {
+                // FloatViewManager may reuse it
+                ((ImageView) mFloatView).setAlpha(255);
+                mFloatAlphaSet = false;
+            }
+            detachFloatWindow();
             mFloatView.setVisibility(GONE);
             if (mFloatViewManager != null) {
                 mFloatViewManager.onDestroyFloatView(mFloatView);
             }
             mFloatView = null;
-            invalidate();
+            // only the area it was drawn in needs redrawing
+            if (!mFloatDrawnRect.isEmpty()) {
+                invalidate(mFloatDrawnRect);
+            }
         }
     }
 
@@ -2441,7 +4594,8 @@ public class DragSortListView extends ListView {
         public View onCreateFloatView(int position);
 
         /**
-         * Called whenever the floating View is dragged. Float View
+         * Called whenever the floating View is dragged, and on each
+         * frame of the drop and remove animations. Float View
          * properties can be changed here. Also, the upcoming location
          * of the float View can be altered by setting
          * <code>location.x</code> and <code>location.y</code>.
@@ -2553,6 +4707,21 @@ public class DragSortListView extends ListView {
         public void remove(int which);
     }
 
+    /**
+     * RemoveListener that takes all items removed by
+     * {@link DragSortListView#removeItems(int[])} in one call. If
+     * your choiceMode is not none and your adapter does not have
+     * stable ids, call {@link DragSortListView#removeCheckState(int[])}
+     * from it.
+     */
+    public interface BatchRemoveListener extends RemoveListener {
+        /**
+         * @param which Positions to remove, in ascending order. Each
+         * is a position in the list before any of them are removed.
+         */
+        public void remove(int[] which);
+    }
+
     public interface DragSortListener extends DropListener, DragListener, RemoveListener {
     }
 
@@ -2565,7 +4734,9 @@ public class DragSortListView extends ListView {
     /**
      * Completely custom scroll speed profile. Default increases linearly
      * with position and is constant in time. Create your own by implementing
-     * {@link DragSortListView.DragScrollProfile}.
+     * {@link DragSortListView.DragScrollProfile}, or use one of
+     * {@link AcceleratingDragScrollProfile} and
+     * {@link ItemRateDragScrollProfile}.
      * 
      * @param ssp
      */
@@ -2694,6 +4865,52 @@ public class DragSortListView extends ListView {
         }
     }
 
+    /**
+     * Like {@link #removeCheckState(int)}, but for several deleted
+     * items at once: the check state of every following item moves
+     * up past all deleted items before it, in a single pass.
+     *
+     * @param positions Distinct deleted positions, in any order, each
+     * relative to the list before any of them were deleted.
+     */
+    public void removeCheckState(int[] positions) {
+        SparseBooleanArray cip = getCheckedItemPositions();
+
+        if (cip == null || cip.size() == 0 || positions.length == 0)
+            return;
+
+        int[] removed = new int[positions.length];
+        System.arraycopy(positions, 0, removed, 0, positions.length);
+        Arrays.sort(removed);
+
+        // checked positions at or after the first deletion; copied
+        // because setItemChecked modifies cip
+        int[] checked = new int[cip.size()];
+        int checkedCount = 0;
+        for (int i = 0; i < cip.size(); i++) {
+            if (cip.valueAt(i) && cip.keyAt(i) >= removed[0]) {
+                checked[checkedCount++] = cip.keyAt(i);
+            }
+        }
+
+        for (int i = 0; i != checkedCount; i++) {
+            setItemChecked(checked[i], false);
+        }
+
+        int shift = 0;
+        for (int i = 0; i != checkedCount; i++) {
+            final int position = checked[i];
+            while (shift < removed.length && removed[shift] < position) {
+                shift++;
+            }
+            if (shift < removed.length && removed[shift] == position) {
+                // deleted item
+                continue;
+            }
+            setItemChecked(position - shift, true);
+        }
+    }
+
     private static int buildRunList(SparseBooleanArray cip, int rangeStart,
             int rangeEnd, int[] runStart, int[] runEnd) {
         int runCount = 0;
@@ -2755,6 +4972,28 @@ public class DragSortListView extends ListView {
         return value;
     }
 
+    /**
+     * Adds <code>delta</code> at <code>index</code> of a Fenwick tree
+     * stored 1-based in <code>tree</code>.
+     */
+    private static void fenwickAdd(int[] tree, int index, int delta) {
+        for (int i = index + 1; i < tree.length; i += i & -i) {
+            tree[i] += delta;
+        }
+    }
+
+    /**
+     * @return Sum of the Fenwick tree values at indices below
+     * <code>index</code>.
+     */
+    private static int fenwickSum(int[] tree, int index) {
+        int sum = 0;
+        for (int i = index; i > 0; i -= i & -i) {
+            sum += tree[i];
+        }
+        return sum;
+    }
+
     private static int findFirstSetIndex(SparseBooleanArray sba, int rangeStart, int rangeEnd) {
         int size = sba.size();
         int i = insertionIndexForKey(sba, rangeStart);
@@ -2801,10 +5040,116 @@ public class DragSortListView extends ListView {
         float getSpeed(float w, long t);
     }
 
-    private class DragScroller implements Runnable {
+    /**
+     * Drag-scroll profile that starts out as the default linear
+     * profile and speeds up the longer the floating View is held in
+     * a scroll region. The speed grows linearly in time up to a
+     * maximum multiple of the linear speed.
+     */
+    public static class AcceleratingDragScrollProfile implements DragScrollProfile {
+
+        private DragSortListView mList;
+
+        private float mAccelTime;
+
+        private float mMaxFactor;
+
+        /**
+         * Doubles the linear speed after one second, up to eight
+         * times the linear speed.
+         */
+        public AcceleratingDragScrollProfile(DragSortListView list) {
+            this(list, 1000f, 8f);
+        }
+
+        /**
+         * @param list The DragSortListView to scroll.
+         * @param accelTime Time (in ms) for the speed to grow by one
+         * multiple of the linear speed.
+         * @param maxFactor Largest multiple of the linear speed.
+         */
+        public AcceleratingDragScrollProfile(DragSortListView list,
+                float accelTime, float maxFactor) {
+            mList = list;
+            mAccelTime = accelTime;
+            mMaxFactor = maxFactor;
+        }
+
+        @Override
+        public float getSpeed(float w, long t) {
+            float factor = Math.min(mMaxFactor, 1f + t / mAccelTime);
+            return mList.getMaxScrollSpeed() * w * factor;
+        }
+    }
+
+    /**
+     * Drag-scroll profile whose speed scales with list length. Its
+     * target is an item rate (items/second) chosen so that the whole
+     * list goes by in a fixed time at full speed. The item rate is
+     * converted to pixels using the average height of the visible
+     * rows. The target is ramped up over time, and the speed is
+     * never less than that of the default linear profile, so short
+     * lists scroll as before.
+     */
+    public static class ItemRateDragScrollProfile implements DragScrollProfile {
+
+        private DragSortListView mList;
+
+        private float mTraverseTime;
+
+        private float mRampTime;
+
+        /**
+         * Full speed crosses the list in ten seconds, reached after
+         * one second in a scroll region.
+         */
+        public ItemRateDragScrollProfile(DragSortListView list) {
+            this(list, 10000f, 1000f);
+        }
+
+        /**
+         * @param list The DragSortListView to scroll.
+         * @param traverseTime Time (in ms) to scroll past every item at
+         * full speed.
+         * @param rampTime Time (in ms) in a scroll region before full
+         * speed is reached.
+         */
+        public ItemRateDragScrollProfile(DragSortListView list,
+                float traverseTime, float rampTime) {
+            mList = list;
+            mTraverseTime = traverseTime;
+            mRampTime = rampTime;
+        }
+
+        @Override
+        public float getSpeed(float w, long t) {
+            final float linear = mList.getMaxScrollSpeed() * w;
+
+            final int childCount = mList.getChildCount();
+            if (childCount == 0) {
+                return linear;
+            }
+
+            // average row height, dividers included
+            final float rowHeight = (float) (mList.getChildAt(childCount - 1).getBottom()
+                    - mList.getChildAt(0).getTop() + mList.getDividerHeight())
+                    / childCount;
+
+            // items per ms
+            final float rate = mList.getCount() / mTraverseTime;
+            final float ramp = Math.min(1f, t / mRampTime);
+
+            return Math.max(linear, w * ramp * rate * rowHeight);
+        }
+    }
+
+    private class DragScroller implements FrameCallback {
 
         private boolean mAbort;
 
+        /**
+         * Frame times in nanoseconds.
+         */
         private long mPrevTime;
         private long mCurrTime;
 
@@ -2819,6 +5164,8 @@ public class DragSortListView extends ListView {
 
         private float mScrollSpeed; // pixels per ms
 
+        private DragScrollStep mScrollStep = new DragScrollStep();
+
         private boolean mScrolling = false;
 
         private int mLastHeader;
@@ -2840,16 +5187,19 @@ public class DragSortListView extends ListView {
                 // Debug.startMethodTracing("dslv-scroll");
                 mAbort = false;
                 mScrolling = true;
-                tStart = SystemClock.uptimeMillis();
+                tStart = System.nanoTime();
                 mPrevTime = tStart;
+                mScrollStep.reset();
                 scrollDir = dir;
-                post(this);
+                mFrameScheduler.postFrameCallback(FrameScheduler.CALLBACK_ANIMATION, this);
+                mHeightPrefetcher.start();
             }
         }
 
         public void stopScrolling(boolean now) {
             if (now) {
-                DragSortListView.this.removeCallbacks(this);
+                mFrameScheduler.removeFrameCallback(FrameScheduler.CALLBACK_ANIMATION, this);
+                mHeightPrefetcher.stop();
                 mScrolling = false;
             } else {
                 mAbort = true;
@@ -2859,7 +5209,7 @@ public class DragSortListView extends ListView {
         }
 
         @Override
-        public void run() {
+        public void doFrame(long frameTimeNanos) {
             if (mAbort) {
                 mScrolling = false;
                 return;
@@ -2889,7 +5239,7 @@ public class DragSortListView extends ListView {
                     }
                 }
                 mScrollSpeed = mScrollProfile.getSpeed((mUpScrollStartYF - maxY)
-                        / mDragUpScrollHeight, mPrevTime);
+                        / mDragUpScrollHeight, (mPrevTime - tStart) / 1000000L);
             } else {
                 View v = getChildAt(last - first);
                 if (v == null) {
@@ -2902,24 +5252,22 @@ public class DragSortListView extends ListView {
                     }
                 }
                 mScrollSpeed = -mScrollProfile.getSpeed((minY - mDownScrollStartYF)
-                        / mDragDownScrollHeight, mPrevTime);
+                        / mDragDownScrollHeight, (mPrevTime - tStart) / 1000000L);
             }
 
-            mCurrTime = SystemClock.uptimeMillis();
-            dt = (float) (mCurrTime - mPrevTime);
+            mCurrTime = frameTimeNanos;
+            dt = Math.max(0f, (float) (mCurrTime - mPrevTime) / 1000000f);
 
             // dy is change in View position of a list item; i.e. positive dy
             // means user is scrolling up (list item moves down the screen,
             // remember
             // y=0 is at top of View).
-            dy = (int) Math.round(mScrollSpeed * dt);
+            dy = mScrollStep.step(mScrollSpeed, dt, listHeight);
 
             int movePos;
             if (dy >= 0) {
-                dy = Math.min(listHeight, dy);
                 movePos = first;
             } else {
-                dy = Math.max(-listHeight, dy);
                 movePos = last;
             }
 
@@ -2928,16 +5276,25 @@ public class DragSortListView extends ListView {
 
             if (movePos == 0 && top > padTop) {
                 top = padTop;
+                mScrollStep.reset();
             }
+            dy = top - moveItem.getTop();
 
-            // always do scroll
-            mBlockLayoutRequests = true;
+            if (dy != 0) {
+                if (canOffsetChildren(dy, padTop, padTop + listHeight)) {
+                    // no rows come or go; just move the ones we have
+                    offsetChildren(dy);
+                    dispatchOffsetScroll(first, count);
+                } else {
+                    mBlockLayoutRequests = true;
 
-            setSelectionFromTop(movePos, top - padTop);
-            DragSortListView.this.layoutChildren();
-            invalidate();
+                    setSelectionFromTop(movePos, top - padTop);
+                    DragSortListView.this.layoutChildren();
 
-            mBlockLayoutRequests = false;
+                    mBlockLayoutRequests = false;
+                }
+                invalidate();
+            }
 
             // scroll means relative float View movement
             doDragFloatView(movePos, moveItem, false);
@@ -2945,7 +5302,226 @@ public class DragSortListView extends ListView {
             mPrevTime = mCurrTime;
             // Log.d("mobeta", "  updated prevTime="+mPrevTime);
 
-            post(this);
+            mFrameScheduler.postFrameCallback(FrameScheduler.CALLBACK_ANIMATION, this);
+        }
+
+        /**
+         * @return True if moving all children by <code>dy</code> leaves
+         * the first and last children covering the top and bottom of
+         * the list, so that no row enters or leaves the screen, and
+         * no fast scroller or selector needs to follow the scroll.
+         */
+        private boolean canOffsetChildren(int dy, int listTop, int listBottom) {
+            final int childCount = getChildCount();
+            if (childCount == 0) {
+                return false;
+            }
+
+            // The fast scroller and selector only follow scrolls made
+            // by AbsListView itself.
+            if (isFastScrollEnabled() || getSelectedItemPosition() != INVALID_POSITION) {
+                return false;
+            }
+
+            final View firstChild = getChildAt(0);
+            final View lastChild = getChildAt(childCount - 1);
+
+            return firstChild.getTop() + dy <= listTop
+                    && firstChild.getBottom() + dy > listTop
+                    && lastChild.getBottom() + dy >= listBottom
+                    && lastChild.getTop() + dy < listBottom;
+        }
+
+        /**
+         * The notifications AbsListView sends after it scrolls: the
+         * scroll listener, tree observers and scroll bars.
+         */
+        private void dispatchOffsetScroll(int first, int count) {
+            if (mOnScrollListener != null) {
+                mOnScrollListener.onScroll(DragSortListView.this, first, getChildCount(), count);
+            }
+            onScrollChanged(0, 0, 0, 0);
+            awakenScrollBars();
+        }
+
+        private void offsetChildren(int dy) {
+            final int childCount = getChildCount();
+            for (int i = 0; i < childCount; ++i) {
+                getChildAt(i).offsetTopAndBottom(dy);
+            }
+
+            if (mShuffleTranslating) {
+                layoutShuffle();
+            }
+        }
+    }
+
+    /**
+     * Fast-scroll style track along the right edge of the list,
+     * shown during a drag. Moving the touch onto it jumps the list
+     * (and the drop slot) to the item at the proportional position
+     * of the touch, or to the start of a section if the input
+     * adapter is a {@link SectionIndexer}. A drag that starts on the
+     * track, e.g. from a drag handle at the right edge of the item,
+     * must leave it before it can scrub.
+     */
+    private class DragScrubber {
+
+        private final static int TRACK_COLOR = 0x40000000;
+        private final static int THUMB_COLOR = 0xa0000000;
+        private final static int LABEL_COLOR = 0xff000000;
+
+        private Paint mPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+
+        /**
+         * Touch width of the track. The track and thumb are drawn
+         * narrower.
+         */
+        private int mWidth;
+        private int mTrackWidth;
+        private int mThumbHeight;
+
+        private boolean mScrubbing = false;
+
+        /**
+         * True once the touch has been outside the track during
+         * this drag; only then does entering the track scrub.
+         */
+        private boolean mArmed = false;
+
+        /**
+         * Position last jumped to, or -1.
+         */
+        private int mTargetPos = -1;
+
+        private SectionIndexer mIndexer;
+        private Object[] mSections;
+        private int mSection = -1;
+
+        public DragScrubber(Context context) {
+            final float density = context.getResources().getDisplayMetrics().density;
+            mWidth = (int) (32 * density + 0.5f);
+            mTrackWidth = (int) (4 * density + 0.5f);
+            mThumbHeight = (int) (48 * density + 0.5f);
+            mPaint.setTextSize(24 * density);
+            mPaint.setTextAlign(Paint.Align.RIGHT);
+        }
+
+        /**
+         * Called at the start of each drag.
+         *
+         * @param x Touch x-coordinate the drag started from.
+         */
+        public void start(int x) {
+            mArmed = !onTrack(x);
+            mScrubbing = false;
+            mTargetPos = -1;
+            mSection = -1;
+
+            ListAdapter adapter = getInputAdapter();
+            if (adapter instanceof SectionIndexer) {
+                mIndexer = (SectionIndexer) adapter;
+                mSections = mIndexer.getSections();
+            } else {
+                mIndexer = null;
+                mSections = null;
+            }
+        }
+
+        public boolean isShown() {
+            return mScrubberEnabled && mDragState == DRAGGING
+                    && getChildCount() < getCount();
+        }
+
+        private boolean onTrack(int x) {
+            return x >= getWidth() - getPaddingRight() - mWidth;
+        }
+
+        /**
+         * Jumps the list if touch (x, y) has moved onto the track.
+         *
+         * @return True if the touch is scrubbing.
+         */
+        public boolean scrub(int x, int y) {
+            if (!isShown() || !onTrack(x)) {
+                if (!onTrack(x)) {
+                    mArmed = true;
+                }
+                if (mScrubbing) {
+                    mScrubbing = false;
+                    mTargetPos = -1;
+                    invalidate();
+                }
+                return false;
+            }
+
+            if (!mArmed) {
+                // drag began on the track; not a scrub
+                return false;
+            }
+
+            if (!mScrubbing) {
+                mScrubbing = true;
+                mDragScroller.stopScrolling(true);
+            }
+
+            final int padTop = getPaddingTop();
+            final int listHeight = getHeight() - padTop - getPaddingBottom();
+            float frac = (float) (y - padTop) / listHeight;
+            frac = Math.max(0f, Math.min(1f, frac));
+
+            final int numHeaders = getHeaderViewsCount();
+            final int dataCount = getCount() - numHeaders - getFooterViewsCount();
+            if (dataCount <= 0) {
+                return true;
+            }
+
+            int pos;
+            if (mSections != null && mSections.length > 0) {
+                mSection = Math.min(mSections.length - 1, (int) (frac * mSections.length));
+                pos = mIndexer.getPositionForSection(mSection);
+            } else {
+                pos = (int) (frac * dataCount);
+            }
+            pos = numHeaders + Math.max(0, Math.min(dataCount - 1, pos));
+
+            if (pos != mTargetPos) {
+                mTargetPos = pos;
+                jumpToPosition(pos);
+            }
+
+            return true;
+        }
+
+        public void draw(Canvas canvas) {
+            final int padTop = getPaddingTop();
+            final int listHeight = getHeight() - padTop - getPaddingBottom();
+            final int right = getWidth() - getPaddingRight();
+            final int trackLeft = right - (mWidth + mTrackWidth) / 2;
+
+            mPaint.setColor(TRACK_COLOR);
+            canvas.drawRect(trackLeft, padTop, trackLeft + mTrackWidth, padTop + listHeight,
+                    mPaint);
+
+            // thumb tracks the first visible position
+            final int range = getCount() - getChildCount();
+            final float frac = range > 0 ? (float) getFirstVisiblePosition() / range : 0f;
+            final int thumbTop = padTop + (int) (frac * (listHeight - mThumbHeight));
+            final int thumbWidth = mScrubbing ? 2 * mTrackWidth : mTrackWidth;
+            final int thumbLeft = right - (mWidth + thumbWidth) / 2;
+
+            mPaint.setColor(THUMB_COLOR);
+            canvas.drawRect(thumbLeft, thumbTop, thumbLeft + thumbWidth,
+                    thumbTop + mThumbHeight, mPaint);
+
+            if (mScrubbing && mSections != null && mSection >= 0
+                    && mSection < mSections.length && mSections[mSection] != null) {
+                mPaint.setColor(LABEL_COLOR);
+                final float baseline = thumbTop + mThumbHeight / 2
+                        - (mPaint.ascent() + mPaint.descent()) / 2;
+                canvas.drawText(mSections[mSection].toString(), right - mWidth, baseline,
+                        mPaint);
+            }
         }
     }
 
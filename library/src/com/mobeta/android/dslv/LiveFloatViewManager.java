@@ -0,0 +1,125 @@
+package com.mobeta.android.dslv;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Point;
+import android.view.View;
+import android.view.ViewGroup;
+
+/**
+ * FloatViewManager that does not copy the dragged item. The floating
+ * View it creates draws the (hidden) source item itself, each time
+ * the floating View is drawn. Lifting is therefore immediate and
+ * needs no Bitmap. Use it when items are costly to rasterize.
+ */
+public class LiveFloatViewManager implements DragSortListView.FloatViewManager {
+
+    private DragSortListView mListView;
+
+    private GhostView mGhostView;
+
+    private int mFloatBGColor = Color.BLACK;
+
+    /**
+     * ListView position of the item being dragged.
+     */
+    private int mPosition;
+
+    /**
+     * Stand-in for the source item once it scrolls off screen and its
+     * View is recycled.
+     */
+    private View mDetachedItem;
+
+    public LiveFloatViewManager(DragSortListView lv) {
+        mListView = lv;
+    }
+
+    public void setBackgroundColor(int color) {
+        mFloatBGColor = color;
+    }
+
+    @Override
+    public View onCreateFloatView(int position) {
+        mPosition = position + mListView.getHeaderViewsCount();
+
+        View item = getSourceItem();
+        if (item == null) {
+            return null;
+        }
+
+        item.setPressed(false);
+
+        if (mGhostView == null) {
+            mGhostView = new GhostView(mListView.getContext());
+        }
+        mGhostView.setLayoutParams(new ViewGroup.LayoutParams(item.getWidth(), item.getHeight()));
+
+        return mGhostView;
+    }
+
+    /**
+     * This does nothing
+     */
+    @Override
+    public void onDragFloatView(View floatView, Point position, Point touch) {
+        // do nothing
+    }
+
+    @Override
+    public void onDestroyFloatView(View floatView) {
+        mDetachedItem = null;
+    }
+
+    /**
+     * Returns the user View of the dragged item as currently bound
+     * in the ListView, or null if it is not onscreen.
+     */
+    private View getSourceItem() {
+        View v = mListView.getChildAt(mPosition - mListView.getFirstVisiblePosition());
+        if (v instanceof DragSortItemView) {
+            return ((DragSortItemView) v).getChildAt(0);
+        }
+        return null;
+    }
+
+    /**
+     * Binds a View of our own to the dragged item.
+     */
+    private View getDetachedItem(int width) {
+        if (mDetachedItem == null) {
+            final int position = mPosition - mListView.getHeaderViewsCount();
+            mDetachedItem = mListView.getInputAdapter().getView(position, null, mListView);
+            mDetachedItem.measure(
+                    View.MeasureSpec.makeMeasureSpec(width, View.MeasureSpec.EXACTLY),
+                    View.MeasureSpec.makeMeasureSpec(0, View.MeasureSpec.UNSPECIFIED));
+            mDetachedItem.layout(0, 0, mDetachedItem.getMeasuredWidth(),
+                    mDetachedItem.getMeasuredHeight());
+        }
+        return mDetachedItem;
+    }
+
+    private class GhostView extends View {
+
+        public GhostView(Context context) {
+            super(context);
+        }
+
+        @Override
+        protected void onDraw(Canvas canvas) {
+            canvas.drawColor(mFloatBGColor);
+
+            View item = getSourceItem();
+            if (item == null) {
+                item = getDetachedItem(getWidth());
+            }
+
+            canvas.save();
+            canvas.translate(-item.getScrollX(), -item.getScrollY());
+            item.draw(canvas);
+            canvas.restore();
+        }
+    }
+
+}
@@ -1,34 +1,201 @@
 package com.mobeta.android.dslv;
 
 import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Picture;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.ColorDrawable;
+import android.graphics.drawable.Drawable;
+import android.graphics.drawable.LayerDrawable;
+import android.graphics.drawable.NinePatchDrawable;
+import android.database.DataSetObserver;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
 import android.graphics.Point;
 import android.graphics.Color;
+import android.widget.AdapterView;
+import android.widget.ListAdapter;
 import android.widget.ListView;
 import android.widget.ImageView;
 import android.view.View;
 import android.view.ViewGroup;
 import android.util.Log;
 
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
 /**
  * Simple implementation of the FloatViewManager class. Uses list
  * items as they appear in the ListView to create the floating View.
  */
 public class SimpleFloatViewManager implements DragSortListView.FloatViewManager {
 
-    private Bitmap mFloatBitmap;
+    /**
+     * Snapshot format enum. SNAPSHOT_ARGB_8888 keeps full color
+     * and transparency. SNAPSHOT_RGB_565 halves snapshot memory but
+     * drops transparency, so use it with an opaque background color.
+     * SNAPSHOT_AUTO picks RGB_565 if the background color is opaque.
+     */
+    public final static int SNAPSHOT_ARGB_8888 = 0;
+    public final static int SNAPSHOT_RGB_565 = 1;
+    public final static int SNAPSHOT_AUTO = 2;
+
+    private int mSnapshotFormat = SNAPSHOT_ARGB_8888;
+
+    private float mSnapshotScale = 1.0f;
+
+    private Matrix mSnapshotMatrix = new Matrix();
+
+    private boolean mAsyncSnapshot = false;
+
+    private ColorDrawable mPlaceholder;
+
+    private int mFloatCacheSize = 0;
+
+    /**
+     * Recent snapshots by item id, least recently dragged first.
+     * Holds only snapshots that are not being displayed.
+     */
+    private LinkedHashMap<Long, CachedSnapshot> mFloatCache =
+            new LinkedHashMap<Long, CachedSnapshot>();
+
+
+    private ListAdapter mObservedAdapter;
+
+    private DataSetObserver mObserver = new DataSetObserver() {
+        @Override
+        public void onChanged() {
+            onDataSetChanged();
+        }
+
+        @Override
+        public void onInvalidated() {
+            onDataSetChanged();
+        }
+    };
+
+    private static HandlerThread sSnapshotThread;
+    private static Handler sSnapshotHandler;
+
+    /**
+     * Finished snapshots come back to the UI thread through this
+     * Handler; Bitmaps are only taken from and returned to the
+     * pool on the UI thread.
+     */
+    private Handler mMainHandler = new Handler(Looper.getMainLooper());
 
-    private ImageView mImageView;
+    /**
+     * State of each floating View created so far. More than one can
+     * be out at a time, e.g. when DragSortController prepares one
+     * for a drag that might start while another is still dropping.
+     */
+    private ArrayList<FloatSnapshot> mFloatSnapshots = new ArrayList<FloatSnapshot>(2);
 
     private int mFloatBGColor = Color.BLACK;
 
     private ListView mListView;
 
+    /**
+     * Snapshots are reused across drags.
+     */
+    private BitmapPool mBitmapPool = new BitmapPool(2);
+
     public SimpleFloatViewManager(ListView lv) {
         mListView = lv;
     }
 
     public void setBackgroundColor(int color) {
         mFloatBGColor = color;
+        mPlaceholder = null;
+    }
+
+    /**
+     * Set the Bitmap format of the floating View snapshot. One of
+     * {@link #SNAPSHOT_ARGB_8888} (default), {@link #SNAPSHOT_RGB_565},
+     * or {@link #SNAPSHOT_AUTO}.
+     */
+    public void setSnapshotFormat(int format) {
+        mSnapshotFormat = format;
+    }
+
+    public int getSnapshotFormat() {
+        return mSnapshotFormat;
+    }
+
+    /**
+     * Set the resolution of the floating View snapshot relative to
+     * the list item. For example, a scale of 0.5 uses a quarter of
+     * the memory; the snapshot is stretched back to item size when
+     * drawn.
+     *
+     * @param scale Value in (0, 1]. Default is 1.
+     */
+    public void setSnapshotScale(float scale) {
+        if (scale > 0f && scale <= 1f) {
+            mSnapshotScale = scale;
+        }
+    }
+
+    public float getSnapshotScale() {
+        return mSnapshotScale;
+    }
+
+    /**
+     * If enabled, the item is only recorded on the UI thread when a
+     * drag starts; it is rasterized into the snapshot on a
+     * background thread. A plain placeholder of the background
+     * color floats until the snapshot is ready, usually a frame
+     * or two.
+     * <p>
+     * The recording refers to the Bitmaps the item draws, which
+     * the UI thread may recycle meanwhile. Items with Bitmap-backed
+     * drawables (a BitmapDrawable or NinePatchDrawable as a
+     * background or ImageView drawable, directly or in a
+     * LayerDrawable) are therefore always snapshotted synchronously.
+     * Items that draw Bitmaps some other way, e.g. in a custom
+     * onDraw(), must not use async snapshots.
+     */
+    public void setAsyncSnapshot(boolean enabled) {
+        mAsyncSnapshot = enabled;
+    }
+
+    public boolean isAsyncSnapshot() {
+        return mAsyncSnapshot;
+    }
+
+    /**
+     * Set how many snapshots of recently dragged items to keep, so
+     * that dragging one of them again needs no new snapshot.
+     * Snapshots are keyed by item id, so the cache is only used if
+     * the ListAdapter has stable ids. Cached snapshots are dropped
+     * when the adapter reports a data set change, except for
+     * changes made by DSLV drops and removals, and are not reused
+     * if the item's checked state has changed. Other changes that
+     * the adapter does not report, e.g. View state set outside the
+     * adapter, are not noticed; call {@link #releaseBitmaps()}
+     * after making them. Default is 0 (no cache).
+     *
+     * @param size Maximum number of cached snapshots.
+     */
+    public void setFloatCacheSize(int size) {
+        mFloatCacheSize = Math.max(0, size);
+        trimFloatCache();
+    }
+
+    public int getFloatCacheSize() {
+        return mFloatCacheSize;
+    }
+
+    /**
+     * Frees the Bitmaps kept for reuse by future drags. Call this
+     * from, e.g., {@link android.app.Activity#onLowMemory()}.
+     */
+    public void releaseBitmaps() {
+        clearFloatCache();
+        mBitmapPool.clear();
     }
 
     /**
@@ -47,22 +214,363 @@ public class SimpleFloatViewManager implements DragSortListView.FloatViewManager
 
         v.setPressed(false);
 
-        // Create a copy of the drawing cache so that it does not get
-        // recycled by the framework when the list tries to clean up memory
-        //v.setDrawingCacheQuality(View.DRAWING_CACHE_QUALITY_HIGH);
-        v.setDrawingCacheEnabled(true);
-        mFloatBitmap = Bitmap.createBitmap(v.getDrawingCache());
-        v.setDrawingCacheEnabled(false);
+        final int w = v.getWidth();
+        final int h = v.getHeight();
+        if (w <= 0 || h <= 0) {
+            return null;
+        }
+
+        // Only snapshot the part of the item that is onscreen; it
+        // matters for items taller than the list.
+        final int cropTop = Math.max(0, -v.getTop());
+        final int cropBottom = Math.min(h, mListView.getHeight() - v.getTop());
+        if (cropBottom <= cropTop) {
+            return null;
+        }
+
+        final float scale = mSnapshotScale;
+        final int bw = Math.max(1, Math.round(w * scale));
+        final int bh = Math.max(1, Math.round((cropBottom - cropTop) * scale));
+
+        final FloatSnapshot snapshot = obtainFloatSnapshot();
+        final ImageView imageView = snapshot.imageView;
+        imageView.setBackgroundDrawable(null);
+        imageView.setPadding(0, 0, 0, 0);
+
+        snapshot.inUse = true;
+        ++snapshot.generation;
+        snapshot.itemId = getCacheItemId(position);
+        snapshot.checked = mListView.isItemChecked(position + mListView.getHeaderViewsCount());
+        snapshot.cropTop = cropTop;
+        snapshot.bitmap = takeCachedSnapshot(snapshot.itemId, snapshot.checked, bw, bh, cropTop);
+
+        if (snapshot.bitmap != null) {
+            imageView.setImageBitmap(snapshot.bitmap);
+        } else if (mAsyncSnapshot && !hasBitmapDrawable(v)) {
+            snapshot.bitmap = mBitmapPool.get(bw, bh, getSnapshotConfig());
+
+            Picture picture = new Picture();
+            drawSnapshot(picture.beginRecording(bw, bh), v, cropTop, scale);
+            picture.endRecording();
+
+            if (mPlaceholder == null) {
+                mPlaceholder = new ColorDrawable(mFloatBGColor);
+            }
+            imageView.setImageDrawable(mPlaceholder);
+
+            snapshot.pending = true;
+            getSnapshotHandler().post(new Rasterizer(picture, snapshot, snapshot.bitmap,
+                    snapshot.generation));
+        } else {
+            snapshot.bitmap = mBitmapPool.get(bw, bh, getSnapshotConfig());
+            // Draw the item straight into a (pooled) Bitmap. The background
+            // color is baked in so that the ImageView has a single
+            // drawable, which DSLV can fade without an offscreen layer.
+            snapshot.bitmap.eraseColor(mFloatBGColor);
+            drawSnapshot(new Canvas(snapshot.bitmap), v, cropTop, scale);
+            imageView.setImageBitmap(snapshot.bitmap);
+        }
+
+        // map the snapshot back onto the full item bounds
+        mSnapshotMatrix.setScale(((float) w) / bw, ((float) (cropBottom - cropTop)) / bh);
+        mSnapshotMatrix.postTranslate(0, cropTop);
+        imageView.setImageMatrix(mSnapshotMatrix);
+
+        imageView.setLayoutParams(new ViewGroup.LayoutParams(w, h));
+
+        return imageView;
+    }
+
+    /**
+     * State of one floating View created by this manager.
+     */
+    private static class FloatSnapshot {
+        ImageView imageView;
+        Bitmap bitmap;
+
+        /**
+         * Item id to cache the snapshot under, or INVALID_ROW_ID.
+         */
+        long itemId = AdapterView.INVALID_ROW_ID;
+        int cropTop;
+
+        /**
+         * Checked state of the item when it was snapshotted.
+         */
+        boolean checked;
+
+        /**
+         * True from onCreateFloatView() to onDestroyFloatView().
+         */
+        boolean inUse;
+
+        /**
+         * True while a background snapshot is drawing into bitmap.
+         */
+        boolean pending;
+
+        /**
+         * Identifies the current use of imageView; background
+         * snapshots finishing for an older one are discarded.
+         */
+        int generation;
+    }
+
+    /**
+     * @return A FloatSnapshot whose ImageView is not out.
+     */
+    private FloatSnapshot obtainFloatSnapshot() {
+        for (int i = 0; i < mFloatSnapshots.size(); ++i) {
+            final FloatSnapshot snapshot = mFloatSnapshots.get(i);
+            if (!snapshot.inUse) {
+                return snapshot;
+            }
+        }
+
+        FloatSnapshot snapshot = new FloatSnapshot();
+        snapshot.imageView = new ImageView(mListView.getContext());
+        snapshot.imageView.setScaleType(ImageView.ScaleType.MATRIX);
+        mFloatSnapshots.add(snapshot);
+        return snapshot;
+    }
+
+    /**
+     * @return True if floatView is a snapshot ImageView created by
+     * this manager.
+     */
+    boolean isSnapshotView(View floatView) {
+        return findFloatSnapshot(floatView) != null;
+    }
+
+    private FloatSnapshot findFloatSnapshot(View floatView) {
+        for (int i = 0; i < mFloatSnapshots.size(); ++i) {
+            final FloatSnapshot snapshot = mFloatSnapshots.get(i);
+            if (snapshot.imageView == floatView) {
+                return snapshot;
+            }
+        }
+        return null;
+    }
+
+    private void drawSnapshot(Canvas canvas, View v, int cropTop, float scale) {
+        canvas.scale(scale, scale);
+        canvas.translate(-v.getScrollX(), -v.getScrollY() - cropTop);
+        v.draw(canvas);
+    }
+
+    /**
+     * @return True if the View or one of its descendants shows a
+     * Bitmap-backed drawable.
+     */
+    private static boolean hasBitmapDrawable(View v) {
+        if (isBitmapBacked(v.getBackground())) {
+            return true;
+        }
+        if (v instanceof ImageView && isBitmapBacked(((ImageView) v).getDrawable())) {
+            return true;
+        }
+        if (v instanceof ViewGroup) {
+            final ViewGroup group = (ViewGroup) v;
+            for (int i = 0; i < group.getChildCount(); ++i) {
+                if (hasBitmapDrawable(group.getChildAt(i))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
 
-        if (mImageView == null) {
-            mImageView = new ImageView(mListView.getContext());
+    private static boolean isBitmapBacked(Drawable d) {
+        if (d == null) {
+            return false;
+        }
+        d = d.getCurrent();
+        if (d instanceof BitmapDrawable || d instanceof NinePatchDrawable) {
+            return true;
+        }
+        if (d instanceof LayerDrawable) {
+            final LayerDrawable layers = (LayerDrawable) d;
+            for (int i = 0; i < layers.getNumberOfLayers(); ++i) {
+                if (isBitmapBacked(layers.getDrawable(i))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static synchronized Handler getSnapshotHandler() {
+        if (sSnapshotHandler == null) {
+            sSnapshotThread = new HandlerThread("DragSortListView snapshot");
+            sSnapshotThread.start();
+            sSnapshotHandler = new Handler(sSnapshotThread.getLooper());
+        }
+        return sSnapshotHandler;
+    }
+
+    /**
+     * Rasterizes a recorded item into the snapshot Bitmap on the
+     * snapshot thread, then hands the Bitmap back on the UI thread.
+     */
+    private class Rasterizer implements Runnable {
+        private Picture mPicture;
+        private FloatSnapshot mSnapshot;
+        private Bitmap mBitmap;
+        private int mGeneration;
+
+        public Rasterizer(Picture picture, FloatSnapshot snapshot, Bitmap bitmap,
+                int generation) {
+            mPicture = picture;
+            mSnapshot = snapshot;
+            mBitmap = bitmap;
+            mGeneration = generation;
         }
-        mImageView.setBackgroundColor(mFloatBGColor);
-        mImageView.setPadding(0, 0, 0, 0);
-        mImageView.setImageBitmap(mFloatBitmap);
-        mImageView.setLayoutParams(new ViewGroup.LayoutParams(v.getWidth(), v.getHeight()));
 
-        return mImageView;
+        @Override
+        public void run() {
+            mBitmap.eraseColor(mFloatBGColor);
+            new Canvas(mBitmap).drawPicture(mPicture);
+            mPicture = null;
+
+            mMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    onSnapshotReady(mSnapshot, mBitmap, mGeneration);
+                }
+            });
+        }
+    }
+
+    private void onSnapshotReady(FloatSnapshot snapshot, Bitmap bitmap, int generation) {
+        if (generation != snapshot.generation || bitmap != snapshot.bitmap) {
+            // floating View is gone
+            mBitmapPool.put(bitmap);
+            return;
+        }
+
+        snapshot.pending = false;
+        snapshot.imageView.setImageBitmap(bitmap);
+        // a floating View drawn by DSLV itself has no parent to
+        // invalidate
+        mListView.invalidate();
+    }
+
+    /**
+     * A snapshot kept in the float cache.
+     */
+    private static class CachedSnapshot {
+        Bitmap bitmap;
+        int cropTop;
+        int bgColor;
+        boolean checked;
+    }
+
+    /**
+     * @param position Item position (excludes headers).
+     *
+     * @return Id to cache the item's snapshot under, or
+     * INVALID_ROW_ID if it should not be cached.
+     */
+    private long getCacheItemId(int position) {
+        if (mFloatCacheSize == 0) {
+            return AdapterView.INVALID_ROW_ID;
+        }
+
+        ListAdapter adapter = mListView.getAdapter();
+        if (adapter != mObservedAdapter) {
+            if (mObservedAdapter != null) {
+                mObservedAdapter.unregisterDataSetObserver(mObserver);
+            }
+            clearFloatCache();
+            mObservedAdapter = adapter;
+            if (adapter != null) {
+                adapter.registerDataSetObserver(mObserver);
+            }
+        }
+
+        if (adapter == null || !adapter.hasStableIds()) {
+            return AdapterView.INVALID_ROW_ID;
+        }
+        return mListView.getItemIdAtPosition(position + mListView.getHeaderViewsCount());
+    }
+
+    /**
+     * Removes and returns the cached snapshot of an item if it
+     * matches the requested snapshot geometry.
+     */
+    private Bitmap takeCachedSnapshot(long id, boolean checked, int width, int height,
+            int cropTop) {
+        if (id == AdapterView.INVALID_ROW_ID) {
+            return null;
+        }
+
+        CachedSnapshot cached = mFloatCache.remove(id);
+        if (cached == null) {
+            return null;
+        }
+
+        Bitmap b = cached.bitmap;
+        if (b.getWidth() == width && b.getHeight() == height
+                && b.getConfig() == getSnapshotConfig() && cached.cropTop == cropTop
+                && cached.bgColor == mFloatBGColor && cached.checked == checked) {
+            return b;
+        }
+
+        mBitmapPool.put(b);
+        return null;
+    }
+
+    private void cacheSnapshot(long id, boolean checked, Bitmap bitmap, int cropTop) {
+        CachedSnapshot cached = new CachedSnapshot();
+        cached.bitmap = bitmap;
+        cached.cropTop = cropTop;
+        cached.bgColor = mFloatBGColor;
+        cached.checked = checked;
+
+        // re-insert to make it the most recent
+        CachedSnapshot old = mFloatCache.remove(id);
+        if (old != null) {
+            mBitmapPool.put(old.bitmap);
+        }
+        mFloatCache.put(id, cached);
+
+        trimFloatCache();
+    }
+
+    private void trimFloatCache() {
+        Iterator<CachedSnapshot> it = mFloatCache.values().iterator();
+        while (mFloatCache.size() > mFloatCacheSize && it.hasNext()) {
+            mBitmapPool.put(it.next().bitmap);
+            it.remove();
+        }
+    }
+
+    private void clearFloatCache() {
+        for (CachedSnapshot cached : mFloatCache.values()) {
+            mBitmapPool.put(cached.bitmap);
+        }
+        mFloatCache.clear();
+    }
+
+    private void onDataSetChanged() {
+        if (mListView instanceof DragSortListView
+                && ((DragSortListView) mListView).isReordering()) {
+            // items only moved
+            return;
+        }
+        clearFloatCache();
+    }
+
+    private Bitmap.Config getSnapshotConfig() {
+        switch (mSnapshotFormat) {
+            case SNAPSHOT_RGB_565:
+                return Bitmap.Config.RGB_565;
+            case SNAPSHOT_AUTO:
+                return Color.alpha(mFloatBGColor) == 255 ? Bitmap.Config.RGB_565
+                        : Bitmap.Config.ARGB_8888;
+            default:
+                return Bitmap.Config.ARGB_8888;
+        }
     }
 
     /**
@@ -75,14 +583,30 @@ public class SimpleFloatViewManager implements DragSortListView.FloatViewManager
 
     /**
      * Removes the Bitmap from the ImageView created in
-     * onCreateFloatView() and tells the system to recycle it.
+     * onCreateFloatView() and keeps it for the next drag.
      */
     @Override
     public void onDestroyFloatView(View floatView) {
-        ((ImageView) floatView).setImageDrawable(null);
+        final FloatSnapshot snapshot = findFloatSnapshot(floatView);
+        if (snapshot == null || !snapshot.inUse) {
+            return;
+        }
 
-        mFloatBitmap.recycle();
-        mFloatBitmap = null;
+        snapshot.imageView.setImageDrawable(null);
+
+        ++snapshot.generation;
+        if (snapshot.pending) {
+            // Rasterizer still owns it; returned to the pool in
+            // onSnapshotReady()
+            snapshot.pending = false;
+        } else if (snapshot.itemId != AdapterView.INVALID_ROW_ID) {
+            cacheSnapshot(snapshot.itemId, snapshot.checked, snapshot.bitmap, snapshot.cropTop);
+        } else {
+            mBitmapPool.put(snapshot.bitmap);
+        }
+        snapshot.bitmap = null;
+        snapshot.itemId = AdapterView.INVALID_ROW_ID;
+        snapshot.inUse = false;
     }
 
 }
@@ -0,0 +1,68 @@
+package com.mobeta.android.dslv;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class DragScrollStepTest {
+
+    /**
+     * Frame intervals of 60, 90 and 120 Hz displays, in nanoseconds.
+     */
+    private final static long[] FRAME_INTERVALS = {
+        16666667L, 11111111L, 8333333L
+    };
+
+    /**
+     * Scroll speeds in pixels per millisecond, from slower than a
+     * pixel per frame up to several pixels per frame.
+     */
+    private final static float[] SPEEDS = {
+        0.01f, 0.05f, 0.13f, 0.5f, 1.7f, -0.05f, -0.5f
+    };
+
+    private final static long ONE_SECOND = 1000000000L;
+
+    @Test
+    public void totalDistanceMatchesSpeedAtAnyFrameRate() {
+        for (long interval : FRAME_INTERVALS) {
+            for (float speed : SPEEDS) {
+                DragScrollStep step = new DragScrollStep();
+                step.reset();
+
+                int total = 0;
+                long prev = 0;
+                for (long t = interval; t <= ONE_SECOND; t += interval) {
+                    final float dt = (float) (t - prev) / 1000000f;
+                    total += step.step(speed, dt, 10000);
+                    prev = t;
+                }
+
+                final float expected = speed * prev / 1000000f;
+                assertEquals("speed " + speed + " at " + interval + "ns", expected,
+                        total, 1f);
+            }
+        }
+    }
+
+    @Test
+    public void clampedStepDropsRemainder() {
+        DragScrollStep step = new DragScrollStep();
+        step.reset();
+
+        assertEquals(10, step.step(1.25f, 10f, 10));
+        assertEquals(0, step.step(0.05f, 10f, 10));
+        assertEquals(-10, step.step(-1.25f, 10f, 10));
+        assertEquals(0, step.step(-0.05f, 10f, 10));
+    }
+
+    @Test
+    public void resetDropsRemainder() {
+        DragScrollStep step = new DragScrollStep();
+
+        assertEquals(0, step.step(0.09f, 10f, 100));
+        step.reset();
+        assertEquals(0, step.step(0.09f, 10f, 100));
+        assertEquals(1, step.step(0.09f, 10f, 100));
+    }
+}